@@ -0,0 +1,217 @@
+package de.intranda.goobi.plugins;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets for the upload rate and the request rate to a MyCoRe server, shared by all plugin instances that talk
+ * to the same server. The limits depend on the time of the day, so that ingests during office hours leave bandwidth for
+ * the portal while nightly ingests run at full speed. Without an active profile nothing is limited.
+ */
+@Log4j2
+public class BandwidthLimiter {
+
+    private static final Map<String, BandwidthLimiter> INSTANCES = new ConcurrentHashMap<>();
+
+    // bytes that are read at once from a limited stream, so that the pauses stay short
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String target;
+    private final TokenBucket bytes = new TokenBucket();
+    private final TokenBucket requests = new TokenBucket();
+    private volatile List<BandwidthProfile> profiles = Collections.emptyList();
+    private BandwidthProfile active;
+
+    private BandwidthLimiter(String target) {
+        this.target = target;
+    }
+
+    /**
+     * get the shared limiter for the server of an URL
+     *
+     * @param url
+     * @return
+     */
+    public static BandwidthLimiter getInstance(String url) {
+        URI uri = URI.create(url);
+        return INSTANCES.computeIfAbsent(uri.getScheme() + "://" + uri.getAuthority(), BandwidthLimiter::new);
+    }
+
+    /**
+     * change the profiles, the latest configuration wins. If several profiles are active at the same time, the first
+     * one is used.
+     *
+     * @param profiles
+     */
+    public void setProfiles(List<BandwidthProfile> profiles) {
+        this.profiles = List.copyOf(profiles);
+    }
+
+    /**
+     * check if any profile limits the upload rate, only then the uploads have to be read through the limiter
+     *
+     * @return
+     */
+    public boolean hasByteLimits() {
+        for (BandwidthProfile p : profiles) {
+            if (p.getBytesPerSecond() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * get the upload rate of the active profile
+     *
+     * @return bytes per second or 0 if the upload rate is not limited now
+     */
+    public long getBytesPerSecond() {
+        BandwidthProfile profile = getActiveProfile();
+        return profile == null ? 0 : profile.getBytesPerSecond();
+    }
+
+    /**
+     * get the profile that is active at a time of the day
+     *
+     * @param time
+     * @return the profile or null if there is no limit at this time
+     */
+    BandwidthProfile getProfile(LocalTime time) {
+        for (BandwidthProfile p : profiles) {
+            if (p.isActive(time)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * wait until a request may be sent
+     *
+     * @throws InterruptedIOException
+     */
+    public void acquireRequest() throws InterruptedIOException {
+        BandwidthProfile profile = getActiveProfile();
+        if (profile != null && profile.getRequestsPerSecond() > 0) {
+            pause(requests.reserve(1, profile.getRequestsPerSecond(), System.nanoTime()));
+        }
+    }
+
+    /**
+     * wait until the given number of bytes may be sent
+     *
+     * @param count
+     * @throws InterruptedIOException
+     */
+    public void acquireBytes(long count) throws InterruptedIOException {
+        BandwidthProfile profile = getActiveProfile();
+        if (profile != null && profile.getBytesPerSecond() > 0) {
+            pause(bytes.reserve(count, profile.getBytesPerSecond(), System.nanoTime()));
+        }
+    }
+
+    /**
+     * wrap a stream with the content of an upload, so that it is read not faster than the upload rate allows
+     *
+     * @param in
+     * @return the limited stream or the stream itself if the upload rate is never limited
+     */
+    public InputStream limit(InputStream in) {
+        return hasByteLimits() ? new LimitedInputStream(in) : in;
+    }
+
+    private synchronized BandwidthProfile getActiveProfile() {
+        BandwidthProfile profile = getProfile(LocalTime.now());
+        if (profile != active) {
+            log.info("Bandwidth profile for " + target + " changed to " + (profile == null ? "unlimited" : profile));
+            active = profile;
+        }
+        return profile;
+    }
+
+    private void pause(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the bandwidth limit of " + target);
+        }
+    }
+
+    /**
+     * token bucket that allows a burst of one second. Reservations may take more tokens than available, the caller
+     * waits until the debt is paid, so large and small reservations are treated fairly in the order they arrive.
+     */
+    static class TokenBucket {
+        private double tokens;
+        private double rate;
+        private long updated;
+        private boolean started;
+
+        /**
+         * take tokens from the bucket
+         *
+         * @param amount
+         * @param rate tokens per second
+         * @param now current time in nanoseconds
+         * @return nanoseconds the caller has to wait before it may proceed
+         */
+        synchronized long reserve(long amount, double rate, long now) {
+            if (started) {
+                // refill with the rate of the elapsed time, the size of the bucket follows the new rate
+                tokens = Math.min(rate, tokens + (now - updated) * this.rate / TimeUnit.SECONDS.toNanos(1));
+            } else {
+                // the bucket starts full
+                tokens = rate;
+                started = true;
+            }
+            this.rate = rate;
+            updated = now;
+            tokens -= amount;
+            if (tokens >= 0) {
+                return 0;
+            }
+            return (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    private class LimitedInputStream extends FilterInputStream {
+
+        private LimitedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                acquireBytes(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, Math.min(len, CHUNK_SIZE));
+            if (read > 0) {
+                acquireBytes(read);
+            }
+            return read;
+        }
+    }
+}
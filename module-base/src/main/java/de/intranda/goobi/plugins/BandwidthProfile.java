@@ -0,0 +1,55 @@
+package de.intranda.goobi.plugins;
+
+import lombok.Getter;
+
+import java.time.LocalTime;
+
+/**
+ * Limits for the traffic to a MyCoRe server during a time of the day. A profile whose end is before its start spans
+ * midnight, e.g. from 22:00 to 06:00.
+ */
+@Getter
+public class BandwidthProfile {
+
+    private final LocalTime from;
+    private final LocalTime to;
+    // 0 means no limit
+    private final long bytesPerSecond;
+    private final double requestsPerSecond;
+
+    /**
+     * create a new profile
+     *
+     * @param from start of the profile, inclusive
+     * @param to end of the profile, exclusive
+     * @param bytesPerSecond maximum upload rate, 0 for no limit
+     * @param requestsPerSecond maximum number of requests per second, 0 for no limit
+     */
+    public BandwidthProfile(LocalTime from, LocalTime to, long bytesPerSecond, double requestsPerSecond) {
+        this.from = from;
+        this.to = to;
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        this.requestsPerSecond = Math.max(0, requestsPerSecond);
+    }
+
+    /**
+     * check if the profile is active at a time of the day
+     *
+     * @param time
+     * @return
+     */
+    public boolean isActive(LocalTime time) {
+        if (from.equals(to)) {
+            return true;
+        }
+        if (from.isBefore(to)) {
+            return !time.isBefore(from) && time.isBefore(to);
+        }
+        return !time.isBefore(from) || time.isBefore(to);
+    }
+
+    @Override
+    public String toString() {
+        return from + "-" + to + " (" + bytesPerSecond + " bytes/s, " + requestsPerSecond + " requests/s)";
+    }
+}
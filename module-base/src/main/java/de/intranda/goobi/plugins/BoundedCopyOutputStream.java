@@ -0,0 +1,61 @@
+package de.intranda.goobi.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output stream that passes all data to the underlying stream and keeps a copy of the first bytes, e.g. to show the
+ * beginning of a streamed request body in an error message.
+ */
+public class BoundedCopyOutputStream extends FilterOutputStream {
+
+    private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    private final int limit;
+    private long count;
+
+    /**
+     * create a new stream
+     *
+     * @param out
+     * @param limit maximum number of bytes to keep
+     */
+    public BoundedCopyOutputStream(OutputStream out, int limit) {
+        super(out);
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        if (copy.size() < limit) {
+            copy.write(b);
+        }
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        int n = Math.min(len, limit - copy.size());
+        if (n > 0) {
+            copy.write(b, off, n);
+        }
+        count += len;
+    }
+
+    /**
+     * get the kept bytes as string, a note is added if the data was longer than the limit
+     *
+     * @return
+     */
+    public String getCopy() {
+        String s = copy.toString(StandardCharsets.UTF_8);
+        if (count > limit) {
+            s += "... (" + (count - limit) + " more bytes)";
+        }
+        return s;
+    }
+}
@@ -0,0 +1,170 @@
+package de.intranda.goobi.plugins;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import de.intranda.goobi.plugins.model.ChecksumEntry;
+import de.intranda.goobi.plugins.model.ChecksumList;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of file checksums inside of the process data directory. Each entry is only valid as long as the
+ * size and the modification time of the file did not change. The cache file is updated under a file lock and merged
+ * with the current content on disk, so that several steps of the same process can use it at the same time.
+ */
+@Log4j2
+public class ChecksumCache {
+
+    public static final String FILENAME = "checksum-cache.xml";
+
+    private static final ObjectMapper MAPPER = new XmlMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    // locks for the cache files inside of this JVM, file locks are only exclusive between different processes
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Map<String, ChecksumEntry> entries = new ConcurrentHashMap<>();
+    private final Map<String, ChecksumEntry> updated = new ConcurrentHashMap<>();
+    private final Map<String, ChecksumEntry> removed = new ConcurrentHashMap<>();
+
+    private ChecksumCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * load the cache from the given folder, a missing or unreadable cache file results in an empty cache
+     *
+     * @param folder
+     * @return
+     */
+    public static ChecksumCache load(Path folder) {
+        ChecksumCache cache = new ChecksumCache(folder.resolve(FILENAME).toAbsolutePath());
+        synchronized (cache.getLock()) {
+            cache.entries.putAll(cache.read());
+        }
+        return cache;
+    }
+
+    /**
+     * get the cached checksum of a file if the file was not changed since the checksum was generated
+     *
+     * @param p
+     * @param attrs current attributes of the file
+     * @return the checksum or null if it is not known or outdated
+     */
+    public String get(Path p, BasicFileAttributes attrs) {
+        String key = p.toAbsolutePath().toString();
+        ChecksumEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.getSize() != attrs.size() || entry.getModified() != attrs.lastModifiedTime().toMillis()) {
+            // the file was changed, invalidate the entry
+            entries.remove(key);
+            updated.remove(key);
+            removed.put(key, entry);
+            return null;
+        }
+        return entry.getMd5();
+    }
+
+    /**
+     * store the checksum of a file
+     *
+     * @param p
+     * @param attrs attributes of the file at the time the checksum was generated
+     * @param md5
+     */
+    public void put(Path p, BasicFileAttributes attrs, String md5) {
+        ChecksumEntry entry = new ChecksumEntry();
+        entry.setPath(p.toAbsolutePath().toString());
+        entry.setSize(attrs.size());
+        entry.setModified(attrs.lastModifiedTime().toMillis());
+        entry.setMd5(md5);
+        entries.put(entry.getPath(), entry);
+        updated.put(entry.getPath(), entry);
+        removed.remove(entry.getPath());
+    }
+
+    /**
+     * write all changes into the cache file. The current content of the file is read again under a lock, so that
+     * entries written by other steps in the meantime are kept.
+     */
+    public void save() {
+        if (updated.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        synchronized (getLock()) {
+            try {
+                Files.createDirectories(file.getParent());
+                Path lockfile = file.resolveSibling(FILENAME + ".lock");
+                try (FileChannel channel = FileChannel.open(lockfile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                        FileLock lock = channel.lock()) {
+                    Map<String, ChecksumEntry> merged = read();
+                    // remove outdated entries unless another step has stored a new checksum in the meantime
+                    for (ChecksumEntry stale : removed.values()) {
+                        ChecksumEntry current = merged.get(stale.getPath());
+                        if (current != null && current.getSize() == stale.getSize()
+                                && current.getModified() == stale.getModified()) {
+                            merged.remove(stale.getPath());
+                        }
+                    }
+                    merged.putAll(updated);
+
+                    ChecksumList list = new ChecksumList();
+                    list.getFiles().addAll(merged.values());
+                    Path tmp = file.resolveSibling(FILENAME + ".tmp");
+                    MAPPER.writeValue(tmp.toFile(), list);
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                    updated.clear();
+                    removed.clear();
+                }
+            } catch (IOException e) {
+                log.error("Error while writing the checksum cache " + file, e);
+            }
+        }
+    }
+
+    /**
+     * read the current content of the cache file
+     *
+     * @return
+     */
+    private Map<String, ChecksumEntry> read() {
+        Map<String, ChecksumEntry> result = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return result;
+        }
+        try {
+            ChecksumList list = MAPPER.readValue(file.toFile(), ChecksumList.class);
+            if (list.getFiles() != null) {
+                for (ChecksumEntry entry : list.getFiles()) {
+                    result.put(entry.getPath(), entry);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Checksum cache " + file + " could not be read and is ignored", e);
+        }
+        return result;
+    }
+
+    private Object getLock() {
+        return LOCKS.computeIfAbsent(file, k -> new Object());
+    }
+}
@@ -0,0 +1,145 @@
+package de.intranda.goobi.plugins;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Calculation of MD5 checksums for files. The files are read via a FileChannel into large direct buffers, several
+ * files are hashed in parallel on a pool with one thread per processor core that is shared by all plugin instances.
+ */
+public class ChecksumService {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private static final ChecksumService INSTANCE = new ChecksumService(Runtime.getRuntime().availableProcessors());
+
+    private final ForkJoinPool pool;
+
+    private ChecksumService(int parallelism) {
+        pool = new ForkJoinPool(Math.max(1, parallelism), p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("mycore-checksum-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * get the shared instance
+     *
+     * @return
+     */
+    public static ChecksumService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Generate MD5 checksums for a batch of files in parallel
+     *
+     * @param files
+     * @return checksums for each of the files in the order of the given collection
+     * @throws IOException the first error that occurred while reading one of the files
+     */
+    public Map<Path, String> md5Hex(Collection<Path> files) throws IOException {
+        return md5Hex(files, null);
+    }
+
+    /**
+     * Generate MD5 checksums for a batch of files in parallel, checksums of unchanged files are taken from the cache
+     *
+     * @param files
+     * @param cache cache with already known checksums, can be null
+     * @return checksums for each of the files in the order of the given collection
+     * @throws IOException the first error that occurred while reading one of the files
+     */
+    public Map<Path, String> md5Hex(Collection<Path> files, ChecksumCache cache) throws IOException {
+        List<ForkJoinTask<String>> tasks = new ArrayList<>(files.size());
+        for (Path p : files) {
+            tasks.add(pool.submit(() -> md5Hex(p, cache)));
+        }
+        Map<Path, String> checksums = new LinkedHashMap<>();
+        int i = 0;
+        for (Path p : files) {
+            try {
+                checksums.put(p, tasks.get(i++).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                tasks.forEach(t -> t.cancel(true));
+                throw new InterruptedIOException("Interrupted while generating checksums");
+            } catch (ExecutionException e) {
+                tasks.forEach(t -> t.cancel(true));
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Error while generating checksum for " + p, e.getCause());
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Generate MD5 checksum for a single file in the calling thread, if the file was not changed since the last time
+     * the cached checksum is returned
+     *
+     * @param p
+     * @param cache cache with already known checksums, can be null
+     * @return
+     * @throws IOException
+     */
+    public static String md5Hex(Path p, ChecksumCache cache) throws IOException {
+        if (cache == null) {
+            return md5Hex(p);
+        }
+        BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        String md5 = cache.get(p, attrs);
+        if (md5 == null) {
+            md5 = md5Hex(p);
+            cache.put(p, attrs, md5);
+        }
+        return md5;
+    }
+
+    /**
+     * Generate MD5 checksum for a single file in the calling thread
+     *
+     * @param p
+     * @return
+     * @throws IOException
+     */
+    public static String md5Hex(Path p) throws IOException {
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        // the direct buffers are kept only for the threads of the pool, other threads use a temporary buffer
+        ByteBuffer buffer = ForkJoinTask.getPool() == INSTANCE.pool ? BUFFERS.get() : ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+}
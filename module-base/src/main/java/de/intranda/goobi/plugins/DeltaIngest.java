@@ -0,0 +1,80 @@
+package de.intranda.goobi.plugins;
+
+import de.intranda.goobi.plugins.model.IngestFile;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Comparison of the files of a delta ingest with the files of the previous successful ingest into the same
+ * derivative. Unchanged files are taken over without upload, files that do not exist anymore are deleted in MyCoRe.
+ */
+@Log4j2
+public class DeltaIngest {
+
+    private DeltaIngest() {
+    }
+
+    /**
+     * take over the information of MyCoRe about a file of the previous ingest if the file was not changed since, the
+     * size and the checksum of the file have to be known
+     *
+     * @param f
+     * @param previous files of the previous ingest
+     * @return true if the file does not have to be uploaded again
+     */
+    public static boolean takeOver(IngestFile f, IngestFileRegistry previous) {
+        IngestFile old = previous.getByName(f.getName());
+        if (old == null || !old.isValid() || old.getGoobiSize() == null || !old.getGoobiSize().equals(f.getGoobiSize())
+                || old.getGoobiChecksum() == null || !old.getGoobiChecksum().equals(f.getGoobiChecksum())) {
+            return false;
+        }
+        f.setMycoreChecksum(old.getMycoreChecksum());
+        f.setMycoreMimeType(old.getMycoreMimeType());
+        f.setMycoreSize(old.getMycoreSize());
+        f.setMycoreUrl(old.getMycoreUrl());
+        f.setValid(true);
+        return true;
+    }
+
+    /**
+     * take over all new files that were not changed since the previous ingest, they are removed from the pending
+     * uploads
+     *
+     * @param created files that were registered in this round
+     * @param pending files to upload
+     * @param previous files of the previous ingest
+     */
+    public static void takeOverUnchanged(Map<Path, IngestFile> created, Map<Path, IngestFile> pending,
+            IngestFileRegistry previous) {
+        for (Map.Entry<Path, IngestFile> e : created.entrySet()) {
+            if (takeOver(e.getValue(), previous)) {
+                pending.remove(e.getKey());
+            }
+        }
+    }
+
+    /**
+     * delete all files of the previous ingest from the derivative that do not exist in Goobi anymore
+     *
+     * @param client
+     * @param previous
+     * @param current
+     * @throws IOException
+     */
+    public static void deleteRemovedFiles(MycoreRestClient client, IngestFileRegistry previous,
+            IngestFileRegistry current) throws IOException {
+        for (IngestFile old : previous) {
+            if (current.getByName(old.getName()) == null && old.getMycoreUrl() != null) {
+                log.info("Delete file " + old.getMycoreUrl() + " from MyCoRe");
+                int status = client.delete(old.getMycoreUrl()).statusCode();
+                if ((status < 200 || status >= 300) && status != 404) {
+                    throw new IOException("Response of MyCoRe for deletion of " + old.getName()
+                            + " was not successful: " + status);
+                }
+            }
+        }
+    }
+}
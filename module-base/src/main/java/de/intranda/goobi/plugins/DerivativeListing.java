@@ -0,0 +1,255 @@
+package de.intranda.goobi.plugins;
+
+import de.intranda.goobi.plugins.model.IngestFile;
+import de.intranda.goobi.plugins.model.MycoreFile;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Verification of the files of a derivative in MyCoRe. The directories of the derivative are registered together with
+ * the lists of files they should contain. Each directory is requested only once per verification round and its
+ * listing is streamed, the files are compared while the listing is read. If MyCoRe already delivers the content of
+ * subdirectories within the listing of a directory, these are used without further requests.
+ */
+@Log4j2
+public class DerivativeListing {
+
+    private static final Pattern HEX_MD5 = Pattern.compile("[0-9a-f]{32}");
+
+    private final MycoreRestClient client;
+    private final String derivativeLocation;
+    private final Map<String, IngestFileRegistry[]> directories = new LinkedHashMap<>();
+
+    /**
+     * create a new listing for a derivative
+     *
+     * @param client
+     * @param derivativeLocation
+     */
+    public DerivativeListing(MycoreRestClient client, String derivativeLocation) {
+        this.client = client;
+        this.derivativeLocation = derivativeLocation;
+    }
+
+    /**
+     * register a directory of the derivative
+     *
+     * @param path path of the directory inside of the derivative, e.g. /contents/alto/
+     * @param lists all lists of files that are stored in this directory
+     */
+    public void addDirectory(String path, IngestFileRegistry... lists) {
+        directories.put(path, lists);
+    }
+
+    /**
+     * compare all files of all registered directories with the listings of MyCoRe, files that are missing in MyCoRe are
+     * marked as invalid
+     *
+     * @throws IOException
+     */
+    public void verifyAll() throws IOException {
+        Set<String> listed = new HashSet<>();
+        Set<String> found = new HashSet<>();
+        for (String path : directories.keySet()) {
+            if (listed.contains(path)) {
+                continue;
+            }
+            listed.add(path);
+            stream(path, new MycoreListingParser.Handler() {
+                @Override
+                public void file(String dir, MycoreFile mf) {
+                    IngestFile f = find(directories.get(dir), mf.getName());
+                    if (f != null) {
+                        found.add(dir + mf.getName());
+                        update(f, mf, derivativeLocation + dir);
+                    }
+                }
+
+                @Override
+                public void directory(String dir) {
+                    listed.add(dir);
+                }
+            });
+        }
+
+        // files that are missing in MyCoRe have to be uploaded again
+        for (Map.Entry<String, IngestFileRegistry[]> e : directories.entrySet()) {
+            for (IngestFileRegistry list : e.getValue()) {
+                for (IngestFile f : list) {
+                    if (!found.contains(e.getKey() + f.getName())) {
+                        f.setValid(false);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * compare only the files that are not valid yet. Each file is requested with a HEAD request, only if MyCoRe does
+     * not send a checksum in the headers the listing of the directory is used. An ETag that looks like an MD5 checksum
+     * is only a hint: a file whose ETag matches is valid, otherwise the checksum of the listing decides.
+     *
+     * @throws IOException
+     */
+    public void verifyPending() throws IOException {
+        for (Map.Entry<String, IngestFileRegistry[]> e : directories.entrySet()) {
+            String path = e.getKey();
+            IngestFileRegistry fallback = new IngestFileRegistry();
+            for (IngestFileRegistry list : e.getValue()) {
+                for (IngestFile f : list) {
+                    if (!f.isValid()) {
+                        verifyFile(path, f, fallback);
+                    }
+                }
+            }
+            if (fallback.size() > 0) {
+                stream(path, (dir, mf) -> {
+                    IngestFile f = path.equals(dir) ? fallback.getByName(mf.getName()) : null;
+                    if (f != null) {
+                        update(f, mf, derivativeLocation + dir);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * check a single file with a HEAD request
+     *
+     * @param path
+     * @param f
+     * @param fallback files that need to be compared with the listing because there was no checksum in the response
+     * @throws IOException
+     */
+    private void verifyFile(String path, IngestFile f, IngestFileRegistry fallback) throws IOException {
+        HttpResponse<String> response = client.head(derivativeLocation + path + f.getName());
+        if (response.statusCode() == 404) {
+            f.setValid(false);
+            return;
+        }
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Response of MyCoRe for file " + path + f.getName() + " was not successful: "
+                    + response.statusCode());
+        }
+        String md5 = getChecksum(response.headers());
+        if (md5 == null) {
+            // ETags are opaque, a different value does not prove that the file is damaged
+            String etag = getETagChecksum(response.headers());
+            if (etag == null || !etag.equals(f.getGoobiChecksum())) {
+                fallback.add(f);
+                return;
+            }
+            md5 = etag;
+        }
+        MycoreFile mf = new MycoreFile();
+        mf.setName(f.getName());
+        mf.setMd5(md5);
+        response.headers().firstValue("Content-Type").ifPresent(mf::setMimeType);
+        response.headers().firstValueAsLong("Content-Length").ifPresent(mf::setSize);
+        update(f, mf, derivativeLocation + path);
+    }
+
+    /**
+     * request the listing of a directory and pass its content to the handler while it is read
+     *
+     * @param path
+     * @param handler
+     * @throws IOException
+     */
+    private void stream(String path, MycoreListingParser.Handler handler) throws IOException {
+        log.info("Request content of ingested content under " + derivativeLocation + path + " in MyCoRe");
+        HttpResponse<InputStream> response = client.getStream(derivativeLocation + path, "application/xml");
+        try (InputStream in = response.body()) {
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                throw new IOException("Response of MyCoRe for content of " + path + " was not successful: "
+                        + response.statusCode());
+            }
+            MycoreListingParser.parse(in, path, handler);
+        }
+    }
+
+    /**
+     * take over the information of MyCoRe about a file and compare the checksums
+     *
+     * @param f
+     * @param mf
+     * @param location
+     */
+    public static void update(IngestFile f, MycoreFile mf, String location) {
+        f.setMycoreChecksum(mf.getMd5());
+        f.setMycoreMimeType(mf.getMimeType());
+        f.setMycoreSize(mf.getSize());
+        f.setMycoreUrl(location + mf.getName());
+        f.setValid(f.getGoobiChecksum() != null && f.getGoobiChecksum().equals(f.getMycoreChecksum()));
+    }
+
+    private static IngestFile find(IngestFileRegistry[] lists, String name) {
+        if (lists != null) {
+            for (IngestFileRegistry list : lists) {
+                IngestFile f = list.getByName(name);
+                if (f != null) {
+                    return f;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * read the MD5 checksum from the headers of a response that are defined to contain one, Digest or Content-MD5
+     *
+     * @param headers
+     * @return the checksum as hex string or null
+     */
+    static String getChecksum(HttpHeaders headers) {
+        for (String digest : headers.allValues("Digest")) {
+            for (String part : digest.split(",")) {
+                String[] kv = part.trim().split("=", 2);
+                if (kv.length == 2 && "md5".equalsIgnoreCase(kv[0])) {
+                    return decodeBase64(kv[1]);
+                }
+            }
+        }
+        String contentMd5 = headers.firstValue("Content-MD5").orElse(null);
+        if (contentMd5 != null) {
+            return decodeBase64(contentMd5);
+        }
+        return null;
+    }
+
+    /**
+     * read an ETag that looks like an MD5 checksum, the server does not guarantee that it is one
+     *
+     * @param headers
+     * @return the ETag as hex string or null
+     */
+    static String getETagChecksum(HttpHeaders headers) {
+        String etag = headers.firstValue("ETag").orElse(null);
+        if (etag != null) {
+            etag = etag.replaceFirst("^W/", "").replace("\"", "").toLowerCase();
+            if (HEX_MD5.matcher(etag).matches()) {
+                return etag;
+            }
+        }
+        return null;
+    }
+
+    private static String decodeBase64(String value) {
+        try {
+            return Hex.encodeHexString(Base64.getDecoder().decode(value.trim()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
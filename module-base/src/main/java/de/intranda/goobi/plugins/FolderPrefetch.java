@@ -0,0 +1,99 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lists the folders of a process and generates the checksums of their files in the background, while the METS file is
+ * exported and the volume and derivative are created in MyCoRe. When the uploads start, the files are usually known
+ * already and the checksums are generated while the files are uploaded.
+ */
+public class FolderPrefetch {
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Future<Map<String, Map<Path, BasicFileAttributes>>> listing;
+    private final Future<Map<Path, String>> checksums;
+
+    private FolderPrefetch(List<String> folders, boolean hash, ChecksumCache cache) {
+        listing = EXECUTOR.submit(() -> FolderScanner.scanAll(folders));
+        if (hash) {
+            checksums = EXECUTOR.submit(() -> {
+                List<Path> files = new ArrayList<>();
+                get(listing).values().forEach(m -> files.addAll(m.keySet()));
+                return ChecksumService.getInstance().md5Hex(files, cache);
+            });
+        } else {
+            checksums = CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+    }
+
+    /**
+     * start to list the folders and to generate the checksums
+     *
+     * @param folders
+     * @param hash generate the checksums of all files
+     * @param cache cache with already known checksums, can be null
+     * @return
+     */
+    public static FolderPrefetch start(List<String> folders, boolean hash, ChecksumCache cache) {
+        return new FolderPrefetch(folders, hash, cache);
+    }
+
+    /**
+     * get the files of the folders, waits until the listing is finished
+     *
+     * @return files with their attributes for each folder
+     * @throws IOException
+     */
+    public Map<String, Map<Path, BasicFileAttributes>> getFiles() throws IOException {
+        return get(listing);
+    }
+
+    /**
+     * get the checksums of all listed files, waits until all checksums are generated
+     *
+     * @return
+     * @throws IOException
+     */
+    public Map<Path, String> getChecksums() throws IOException {
+        return get(checksums);
+    }
+
+    /**
+     * stop the listing and the generation of checksums if they are still running, e.g. because the ingest was aborted
+     */
+    public void cancel() {
+        listing.cancel(true);
+        checksums.cancel(true);
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the files of the process");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Reading the files of the process was cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error while reading the files of the process", cause);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package de.intranda.goobi.plugins;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.StorageProviderInterface;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lists the files of folders together with their attributes in a single pass. The attributes are read while the
+ * directory is walked, so no further request to the file system is needed for the size or modification date of a
+ * file. Several folders are scanned in parallel. If the process data is stored in S3, the folders are listed with the
+ * StorageProvider instead.
+ */
+public class FolderScanner {
+
+    private FolderScanner() {
+    }
+
+    /**
+     * list all regular files of a folder that are not hidden, sorted by name
+     *
+     * @param folder
+     * @return files with their attributes, empty if the folder does not exist
+     * @throws IOException
+     */
+    public static Map<Path, BasicFileAttributes> scan(String folder) throws IOException {
+        if (ConfigurationHelper.getInstance().useS3()) {
+            return scan(folder, StorageProvider.getInstance());
+        }
+        Map<Path, BasicFileAttributes> files = new TreeMap<>();
+        Path dir = Paths.get(folder);
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !file.getFileName().toString().startsWith(".")) {
+                    files.put(file, attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * list the files of a folder with a StorageProvider, the size and modification date are requested for each file
+     *
+     * @param folder
+     * @param storage
+     * @return files with their attributes, empty if the folder does not exist
+     * @throws IOException
+     */
+    static Map<Path, BasicFileAttributes> scan(String folder, StorageProviderInterface storage) throws IOException {
+        Map<Path, BasicFileAttributes> files = new TreeMap<>();
+        for (Path file : storage.listFiles(folder)) {
+            if (!file.getFileName().toString().startsWith(".")) {
+                files.put(file, new StorageAttributes(storage.getFileSize(file), storage.getLastModifiedDate(file)));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * scan several folders in parallel
+     *
+     * @param folders
+     * @return the files of each folder in the order of the given collection
+     * @throws IOException the first error that occurred while scanning one of the folders
+     */
+    public static Map<String, Map<Path, BasicFileAttributes>> scanAll(Collection<String> folders) throws IOException {
+        Map<String, Map<Path, BasicFileAttributes>> result = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Map<Path, BasicFileAttributes>>> tasks = new ArrayList<>();
+            for (String folder : folders) {
+                tasks.add(executor.submit(() -> {
+                    try {
+                        return scan(folder);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            int i = 0;
+            for (String folder : folders) {
+                result.put(folder, tasks.get(i++).get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning folders");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Error while scanning folders", e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * attributes of a file that was listed with a StorageProvider
+     */
+    private static class StorageAttributes implements BasicFileAttributes {
+        private final long size;
+        private final FileTime modified;
+
+        private StorageAttributes(long size, long modified) {
+            this.size = size;
+            this.modified = FileTime.fromMillis(modified);
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return modified;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return true;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Stream that reads the gzip compressed content of another stream. The compression runs in the thread that reads the
+ * stream, so an upload is compressed while it is sent without holding the compressed content in memory or on disk.
+ */
+class GzipCompressingInputStream extends InputStream {
+
+    // magic number, deflate, no flags, no modification time, no extra flags, unknown operating system
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final CRC32 crc = new CRC32();
+    private final Deflater deflater;
+    private final DeflaterInputStream deflated;
+    private byte[] prefix = HEADER;
+    private byte[] trailer;
+    private int position;
+
+    /**
+     * create a new stream
+     *
+     * @param in uncompressed content
+     * @param level compression level of the Deflater
+     */
+    GzipCompressingInputStream(InputStream in, int level) {
+        deflater = new Deflater(level, true);
+        deflated = new DeflaterInputStream(new CheckedInputStream(in, crc), deflater, 64 * 1024);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (prefix != null) {
+            int count = Math.min(len, prefix.length - position);
+            System.arraycopy(prefix, position, b, off, count);
+            position += count;
+            if (position == prefix.length) {
+                prefix = null;
+                position = 0;
+            }
+            return count;
+        }
+        if (trailer == null) {
+            int count = deflated.read(b, off, len);
+            if (count >= 0) {
+                return count;
+            }
+            trailer = createTrailer();
+        }
+        if (position == trailer.length) {
+            return -1;
+        }
+        int count = Math.min(len, trailer.length - position);
+        System.arraycopy(trailer, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            deflated.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // checksum and size of the uncompressed content, little endian
+    private byte[] createTrailer() {
+        long checksum = crc.getValue();
+        long size = deflater.getBytesRead();
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = (byte) (checksum >>> (8 * i));
+            bytes[4 + i] = (byte) (size >>> (8 * i));
+        }
+        return bytes;
+    }
+}
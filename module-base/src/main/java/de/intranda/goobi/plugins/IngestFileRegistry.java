@@ -0,0 +1,124 @@
+package de.intranda.goobi.plugins;
+
+import de.intranda.goobi.plugins.model.IngestFile;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collection of the files of one type that are ingested into MyCoRe. The files are indexed by their name and by their
+ * path in Goobi, so that they can be found without scanning the whole list. The order of insertion is kept.
+ */
+public class IngestFileRegistry implements Iterable<IngestFile> {
+
+    private final Map<String, IngestFile> byName = new LinkedHashMap<>();
+    private final Map<String, IngestFile> byPath = new HashMap<>();
+
+    /**
+     * add a file, a file with the same name or path is replaced
+     *
+     * @param f
+     */
+    public void add(IngestFile f) {
+        IngestFile old = byName.put(f.getName(), f);
+        if (old != null && old.getGoobiFilePath() != null) {
+            byPath.remove(old.getGoobiFilePath());
+        }
+        if (f.getGoobiFilePath() != null) {
+            byPath.put(f.getGoobiFilePath(), f);
+        }
+    }
+
+    /**
+     * register the files of a folder, files that are registered already keep their state from the previous upload
+     * rounds
+     *
+     * @param files files of the folder with their attributes
+     * @param type
+     * @param created receives the files that were not registered before
+     * @param maxTries number of uploads of a file after which it is not tried again
+     * @return files that were not uploaded successfully yet and were not tried too often
+     */
+    public Map<Path, IngestFile> register(Map<Path, BasicFileAttributes> files, String type,
+            Map<Path, IngestFile> created, int maxTries) {
+        Map<Path, IngestFile> pending = new LinkedHashMap<>();
+        for (Map.Entry<Path, BasicFileAttributes> e : files.entrySet()) {
+            Path p = e.getKey();
+            // if file is known, reupload it
+            IngestFile f = getByPath(p.toString());
+            // if file is unknown, create and add it
+            if (f == null) {
+                f = new IngestFile();
+                f.setGoobiFilePath(p.toString());
+                f.setName(p.getFileName().toString());
+                f.setGoobiFileType(type);
+                setAttributes(f, e.getValue());
+                add(f);
+                created.put(p, f);
+            }
+
+            // if not uploaded successfully before try it again until the maximum of tries is reached
+            if (!f.isValid() && f.getUploadCounter() < maxTries) {
+                pending.put(p, f);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * set size and modification date of a file in Goobi from already known attributes
+     *
+     * @param f
+     * @param attrs
+     */
+    static void setAttributes(IngestFile f, BasicFileAttributes attrs) {
+        f.setGoobiSize(attrs.size());
+        f.setModified(OffsetDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault()));
+    }
+
+    /**
+     * find a file by its name
+     *
+     * @param name
+     * @return the file or null
+     */
+    public IngestFile getByName(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * find a file by its path in Goobi
+     *
+     * @param path
+     * @return the file or null
+     */
+    public IngestFile getByPath(String path) {
+        return byPath.get(path);
+    }
+
+    /**
+     * get all files in the order they were added
+     *
+     * @return
+     */
+    public Collection<IngestFile> getFiles() {
+        return Collections.unmodifiableCollection(byName.values());
+    }
+
+    public int size() {
+        return byName.size();
+    }
+
+    @Override
+    public Iterator<IngestFile> iterator() {
+        return getFiles().iterator();
+    }
+}
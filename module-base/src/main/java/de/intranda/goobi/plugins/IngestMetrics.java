@@ -0,0 +1,268 @@
+package de.intranda.goobi.plugins;
+
+import lombok.extern.log4j.Log4j2;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JVM-wide metrics of all ingests: time per phase, uploaded files and bytes, retries and the responses of MyCoRe. The
+ * metrics are registered as MXBean de.intranda.goobi.plugins:type=MycoreIngest, each run additionally collects the
+ * times of its own phases for the receipt.
+ */
+@Log4j2
+public class IngestMetrics implements IngestMetricsMXBean {
+
+    public static final String OBJECT_NAME = "de.intranda.goobi.plugins:type=MycoreIngest";
+
+    private static final IngestMetrics INSTANCE = register(new IngestMetrics());
+
+    private final LongAdder ingests = new LongAdder();
+    private final LongAdder failedIngests = new LongAdder();
+    private final Map<String, LongAdder> phaseTimes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> phaseCounts = new ConcurrentHashMap<>();
+    private final LongAdder uploadedFiles = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder uploadTime = new LongAdder();
+    private final AtomicInteger uploadsInFlight = new AtomicInteger();
+    private final LongAdder retries = new LongAdder();
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    // time with at least one running upload, used for the transfer rates
+    private final AtomicLong busySince = new AtomicLong();
+
+    private IngestMetrics() {
+    }
+
+    /**
+     * get the shared instance
+     *
+     * @return
+     */
+    public static IngestMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private static IngestMetrics register(IngestMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // a redeployed plugin replaces the bean of the previous class loader
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException | RuntimeException e) {
+            log.warn("Metrics of the MyCoRe ingest could not be registered in JMX", e);
+        }
+        return metrics;
+    }
+
+    /**
+     * start the metrics of a new ingest
+     *
+     * @return
+     */
+    public Run startRun() {
+        return new Run();
+    }
+
+    /**
+     * count a retry of a request to MyCoRe
+     */
+    public void retry() {
+        retries.increment();
+    }
+
+    /**
+     * count a response of MyCoRe
+     *
+     * @param status
+     */
+    public void response(int status) {
+        statusCodes.computeIfAbsent(status, s -> new LongAdder()).increment();
+    }
+
+    /**
+     * mark the start of an upload
+     */
+    public void uploadStarted() {
+        if (uploadsInFlight.getAndIncrement() == 0) {
+            busySince.set(System.nanoTime());
+        }
+    }
+
+    /**
+     * count a file that was uploaded successfully
+     *
+     * @param bytes size of the file
+     */
+    public void uploaded(long bytes) {
+        uploadedFiles.increment();
+        uploadedBytes.add(bytes);
+    }
+
+    /**
+     * mark the end of an upload
+     */
+    public void uploadFinished() {
+        long since = busySince.get();
+        if (uploadsInFlight.decrementAndGet() == 0 && busySince.compareAndSet(since, 0)) {
+            uploadTime.add(System.nanoTime() - since);
+        }
+    }
+
+    @Override
+    public long getIngests() {
+        return ingests.sum();
+    }
+
+    @Override
+    public long getFailedIngests() {
+        return failedIngests.sum();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseTimes() {
+        return toMap(phaseTimes);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        return toMap(phaseCounts);
+    }
+
+    @Override
+    public long getUploadedFiles() {
+        return uploadedFiles.sum();
+    }
+
+    @Override
+    public long getUploadedBytes() {
+        return uploadedBytes.sum();
+    }
+
+    @Override
+    public double getUploadedFilesPerSecond() {
+        return perSecond(uploadedFiles.sum());
+    }
+
+    @Override
+    public double getUploadedBytesPerSecond() {
+        return perSecond(uploadedBytes.sum());
+    }
+
+    @Override
+    public int getUploadsInFlight() {
+        return uploadsInFlight.get();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStatusCodes() {
+        Map<String, Long> result = new TreeMap<>();
+        statusCodes.forEach((k, v) -> result.put(String.valueOf(k), v.sum()));
+        return result;
+    }
+
+    private double perSecond(long value) {
+        long time = uploadTime.sum();
+        long since = busySince.get();
+        if (since != 0) {
+            time += System.nanoTime() - since;
+        }
+        return time > 0 ? value * (double) TimeUnit.SECONDS.toNanos(1) / time : 0;
+    }
+
+    private static Map<String, Long> toMap(Map<String, LongAdder> values) {
+        Map<String, Long> result = new TreeMap<>();
+        values.forEach((k, v) -> result.put(k, v.sum()));
+        return result;
+    }
+
+    /**
+     * metrics of a single ingest
+     */
+    public class Run {
+        private final long start = System.nanoTime();
+        private final Map<String, Long> timings = new LinkedHashMap<>();
+
+        private Run() {
+        }
+
+        /**
+         * start to measure a phase, the time is recorded when the phase is closed
+         *
+         * @param name
+         * @return
+         */
+        public Phase phase(String name) {
+            return new Phase(this, name);
+        }
+
+        /**
+         * time in milliseconds spent in each phase of this ingest, phases that ran several times are added up
+         *
+         * @return
+         */
+        public synchronized Map<String, Long> getTimings() {
+            Map<String, Long> result = new LinkedHashMap<>(timings);
+            result.put("total", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return result;
+        }
+
+        /**
+         * count the finished ingest
+         *
+         * @param success
+         */
+        public void finish(boolean success) {
+            ingests.increment();
+            if (!success) {
+                failedIngests.increment();
+            }
+        }
+
+        private synchronized void record(String name, long nanos) {
+            timings.merge(name, TimeUnit.NANOSECONDS.toMillis(nanos), Long::sum);
+            phaseTimes.computeIfAbsent(name, n -> new LongAdder()).add(TimeUnit.NANOSECONDS.toMillis(nanos));
+            phaseCounts.computeIfAbsent(name, n -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * a running phase of an ingest
+     */
+    public static class Phase implements AutoCloseable {
+        private final Run run;
+        private final String name;
+        private final long start = System.nanoTime();
+        private boolean closed;
+
+        private Phase(Run run, String name) {
+            this.run = run;
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                run.record(name, System.nanoTime() - start);
+            }
+        }
+    }
+}
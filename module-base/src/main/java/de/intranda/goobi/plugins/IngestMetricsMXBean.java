@@ -0,0 +1,40 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+
+/**
+ * Management interface of the ingest metrics, all values are collected since the start of the JVM
+ */
+public interface IngestMetricsMXBean {
+
+    long getIngests();
+
+    long getFailedIngests();
+
+    /**
+     * total time in milliseconds spent in each phase of the ingest
+     */
+    Map<String, Long> getPhaseTimes();
+
+    /**
+     * number of times each phase was executed
+     */
+    Map<String, Long> getPhaseCounts();
+
+    long getUploadedFiles();
+
+    long getUploadedBytes();
+
+    double getUploadedFilesPerSecond();
+
+    double getUploadedBytesPerSecond();
+
+    int getUploadsInFlight();
+
+    long getRetries();
+
+    /**
+     * number of responses of MyCoRe for each HTTP status code
+     */
+    Map<String, Long> getStatusCodes();
+}
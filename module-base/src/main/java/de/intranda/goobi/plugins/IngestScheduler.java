@@ -0,0 +1,249 @@
+package de.intranda.goobi.plugins;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JVM-wide scheduler for the uploads of all ingests that run at the same time. It limits the number of concurrent
+ * uploads and the bytes in flight over all processes. Each process with pending uploads gets an equal share of the
+ * connections, free slots are given to the process with the fewest remaining bytes first, so that small processes are
+ * finished quickly and the queue of waiting processes drains faster.
+ */
+@Log4j2
+public class IngestScheduler {
+
+    private static final IngestScheduler INSTANCE = new IngestScheduler();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final List<Ticket> tickets = new ArrayList<>();
+    private final List<Request> waiting = new ArrayList<>();
+
+    private int maxConnections = 16;
+    private long maxBytes = 512L * 1024 * 1024;
+    private int connections;
+    private long bytes;
+    private long sequence;
+
+    private IngestScheduler() {
+    }
+
+    /**
+     * get the shared instance
+     *
+     * @return
+     */
+    public static IngestScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * change the global limits, the latest configuration wins
+     *
+     * @param maxConnections maximum number of concurrent uploads of all processes
+     * @param maxBytes maximum size of all files that are uploaded at the same time
+     */
+    public void setLimits(int maxConnections, long maxBytes) {
+        lock.lock();
+        try {
+            this.maxConnections = Math.max(1, maxConnections);
+            this.maxBytes = Math.max(1, maxBytes);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * register a process that wants to upload files
+     *
+     * @param name name of the process for the log
+     * @return ticket of the process, has to be closed at the end of the ingest
+     */
+    public Ticket register(String name) {
+        lock.lock();
+        try {
+            Ticket ticket = new Ticket(name);
+            tickets.add(ticket);
+            log.debug("Process " + name + " registered for upload, " + tickets.size() + " processes are active");
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * grant waiting requests as long as the limits allow it
+     */
+    private void dispatch() {
+        if (waiting.isEmpty()) {
+            return;
+        }
+        // processes with running or waiting uploads share the connections
+        Set<Ticket> active = new HashSet<>();
+        for (Request r : waiting) {
+            active.add(r.ticket);
+        }
+        for (Ticket t : tickets) {
+            if (t.connections > 0) {
+                active.add(t);
+            }
+        }
+        int share = Math.max(1, maxConnections / active.size());
+
+        waiting.sort(Comparator.comparingLong((Request r) -> r.ticket.remaining).thenComparingLong(r -> r.sequence));
+        List<Request> granted = new ArrayList<>();
+        for (Request r : waiting) {
+            if (connections >= maxConnections) {
+                break;
+            }
+            if (r.ticket.connections >= share) {
+                continue;
+            }
+            if (connections > 0 && bytes + r.bytes > maxBytes) {
+                // wait until enough bytes are transferred, smaller files may not overtake the file forever
+                break;
+            }
+            connections++;
+            bytes += r.bytes;
+            r.ticket.connections++;
+            r.granted = true;
+            granted.add(r);
+        }
+        if (!granted.isEmpty()) {
+            waiting.removeAll(granted);
+            changed.signalAll();
+        }
+    }
+
+    /**
+     * registration of a single process
+     */
+    public class Ticket implements AutoCloseable {
+        private final String name;
+        private long remaining;
+        private int connections;
+
+        private Ticket(String name) {
+            this.name = name;
+        }
+
+        /**
+         * set the number of bytes the process still has to upload, processes with less bytes are preferred
+         *
+         * @param remaining
+         */
+        public void setRemaining(long remaining) {
+            lock.lock();
+            try {
+                this.remaining = Math.max(0, remaining);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * wait until an upload of the given size may start
+         *
+         * @param size size of the file
+         * @return slot that has to be closed when the upload is finished
+         * @throws InterruptedIOException
+         */
+        public Slot acquire(long size) throws InterruptedIOException {
+            lock.lock();
+            try {
+                Request request = new Request(this, Math.max(0, size), sequence++);
+                waiting.add(request);
+                dispatch();
+                try {
+                    while (!request.granted) {
+                        changed.await();
+                    }
+                } catch (InterruptedException e) {
+                    if (request.granted) {
+                        release(request.bytes);
+                    } else {
+                        waiting.remove(request);
+                        dispatch();
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for an upload slot for " + name);
+                }
+                return new Slot(this, request.bytes);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(long size) {
+            IngestScheduler.this.connections--;
+            bytes -= size;
+            connections--;
+            remaining = Math.max(0, remaining - size);
+            dispatch();
+        }
+
+        /**
+         * unregister the process at the end of the ingest
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                tickets.remove(this);
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * permission for a single upload
+     */
+    public class Slot implements Closeable {
+        private final Ticket ticket;
+        private final long size;
+        private boolean released;
+
+        private Slot(Ticket ticket, long size) {
+            this.ticket = ticket;
+            this.size = size;
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (!released) {
+                    released = true;
+                    ticket.release(size);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class Request {
+        private final Ticket ticket;
+        private final long bytes;
+        private final long sequence;
+        private boolean granted;
+
+        private Request(Ticket ticket, long bytes, long sequence) {
+            this.ticket = ticket;
+            this.bytes = bytes;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package de.intranda.goobi.plugins;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import de.intranda.goobi.plugins.model.IngestFile;
+import de.intranda.goobi.plugins.model.IngestState;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Persistence of the incremental state of an ingest inside of the process data directory. The state contains the
+ * created volume and derivative and the status of each file, so that an interrupted ingest can be continued.
+ */
+@Log4j2
+public class IngestStateStore {
+
+    public static final String FILENAME = "ingest-state.xml";
+
+    private static final ObjectMapper MAPPER = new XmlMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Path file;
+
+    /**
+     * create a store for the given folder
+     *
+     * @param folder
+     */
+    public IngestStateStore(Path folder) {
+        file = folder.resolve(FILENAME);
+    }
+
+    /**
+     * read the state of a previous ingest
+     *
+     * @return the state or null if there is no unfinished ingest
+     */
+    public IngestState load() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(file.toFile(), IngestState.class);
+        } catch (IOException e) {
+            log.error("Ingest state " + file + " could not be read, a new ingest is started", e);
+            return null;
+        }
+    }
+
+    /**
+     * write the current state, the file is replaced atomically so that a crash never leaves a broken state behind
+     *
+     * @param state
+     */
+    public void save(IngestState state) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(FILENAME + ".tmp");
+            MAPPER.writeValue(tmp.toFile(), state);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error while writing the ingest state " + file, e);
+        }
+    }
+
+    /**
+     * take over the media and ALTO files of an interrupted ingest, files that were changed since are uploaded again
+     *
+     * @param state
+     * @param medias
+     * @param altos
+     */
+    public static void restoreFiles(IngestState state, IngestFileRegistry medias, IngestFileRegistry altos) {
+        for (IngestFile f : state.getFiles()) {
+            IngestFileRegistry registry;
+            if ("media".equals(f.getGoobiFileType())) {
+                registry = medias;
+            } else if ("alto".equals(f.getGoobiFileType())) {
+                registry = altos;
+            } else {
+                // METS files are exported again for each run
+                continue;
+            }
+            try {
+                Path p = Path.of(f.getGoobiFilePath());
+                BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                if (f.getGoobiSize() != null && f.getGoobiSize() == attrs.size() && f.getModified() != null
+                        && f.getModified().toInstant().equals(attrs.lastModifiedTime().toInstant())) {
+                    f.setUploadCounter(0);
+                    registry.add(f);
+                }
+            } catch (IOException e) {
+                log.debug("File " + f.getGoobiFilePath() + " of the previous ingest is not available anymore");
+            }
+        }
+    }
+
+    /**
+     * remove the state after the ingest was finished successfully
+     */
+    public void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Error while deleting the ingest state " + file, e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package de.intranda.goobi.plugins;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+/**
+ * Settings of the HTTP connection to MyCoRe. Clients with the same connection settings share one HTTP client and with
+ * it the open connections, so that TLS handshakes are not repeated for each request or each process.
+ */
+@Getter
+@Setter
+public class MycoreClientSettings {
+
+    // use HTTP/2 if the server supports it, otherwise HTTP/1.1 with persistent connections is used
+    private boolean http2 = true;
+    // timeout in seconds to establish a connection
+    private long connectTimeout = 10;
+    // timeout in seconds for a request without body
+    private long requestTimeout = 60;
+    // lowest expected transfer rate in KB per second, the timeout of uploads grows with the size of the file
+    private long minTransferRate = 256;
+    // number of retries of a failed request
+    private int retries = 5;
+    // delay in milliseconds before the first retry
+    private long backoff = 1000;
+
+    /**
+     * get the timeout for a request with a body of the given size
+     *
+     * @param bytes
+     * @return
+     */
+    public Duration getTimeout(long bytes) {
+        long seconds = requestTimeout;
+        if (bytes > 0 && minTransferRate > 0) {
+            seconds += bytes / (minTransferRate * 1024);
+        }
+        return Duration.ofSeconds(Math.max(1, seconds));
+    }
+
+    /**
+     * key of the settings that define the HTTP client
+     *
+     * @return
+     */
+    String getConnectionKey() {
+        return http2 + "|" + connectTimeout;
+    }
+}
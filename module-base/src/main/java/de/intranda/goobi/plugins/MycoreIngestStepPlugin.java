@@ -1,38 +1,24 @@
 package de.intranda.goobi.plugins;
 
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
-import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
 import de.intranda.goobi.plugins.model.IngestFile;
 import de.intranda.goobi.plugins.model.IngestReceipt;
-import de.intranda.goobi.plugins.model.MycoreDirectory;
-import de.intranda.goobi.plugins.model.MycoreFile;
+import de.intranda.goobi.plugins.model.IngestState;
 import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.config.ConfigurationHelper;
 import de.sub.goobi.export.download.ExportMets;
-import de.sub.goobi.helper.StorageProvider;
-import de.sub.goobi.helper.enums.PropertyType;
 import de.sub.goobi.helper.exceptions.DAOException;
 import de.sub.goobi.helper.exceptions.ExportFileException;
 import de.sub.goobi.helper.exceptions.SwapException;
 import de.sub.goobi.helper.exceptions.UghHelperException;
 import de.sub.goobi.persistence.managers.JournalManager;
-import de.sub.goobi.persistence.managers.PropertyManager;
-import kong.unirest.core.HttpResponse;
-import kong.unirest.core.Unirest;
-import kong.unirest.core.UnirestException;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.SubnodeConfiguration;
 import org.goobi.beans.GoobiProperty;
-import org.goobi.beans.GoobiProperty.PropertyOwnerType;
 import org.goobi.beans.JournalEntry;
 import org.goobi.beans.JournalEntry.EntryType;
 import org.goobi.beans.Step;
@@ -43,27 +29,36 @@ import ugh.exceptions.*;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
-import java.net.URL;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 @PluginImplementation
 @Log4j2
 public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
 
+
     @Getter
     private String title = "intranda_step_mycore_ingest";
     @Getter
@@ -71,14 +66,34 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
     private String returnPath;
 
     private String xslt;
+    private long xsltCacheTtl = 300;
+    private boolean streamTransformation = false;
     private String mycoreApi;
     private String mycoreLogin;
     private String mycorePassword;
+    private MycoreRestClient restClient;
     private IngestReceipt receipt;
-    private List<IngestFile> metses;
-    private List<IngestFile> medias;
-    private List<IngestFile> altos;
+    private ReceiptWriter receiptWriter;
+    private IngestFileRegistry metses;
+    private IngestFileRegistry medias;
+    private IngestFileRegistry altos;
     private int ingestMaxTries = 3;
+    private int uploadThreads = 4;
+    private boolean uploadVirtualThreads = false;
+    private boolean hashWhileUploading = false;
+    private boolean compressXml = false;
+    private boolean useChecksumCache = true;
+    private ChecksumCache checksumCache;
+    private boolean resumeIngest = true;
+    private IngestStateStore stateStore;
+    private IngestState ingestState;
+    private boolean deltaIngest = false;
+    private IngestFileRegistry previousMedias;
+    private IngestFileRegistry previousAltos;
+    private boolean targetedVerification = true;
+    private IngestScheduler.Ticket schedulerTicket;
+    private FolderPrefetch prefetch;
+    private IngestMetrics.Run metrics;
     private int ingestCurrentTry = 1;
     private boolean ingestOk = false;
     private String ingestMessage = "";
@@ -91,13 +106,58 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
         // read parameters from correct block in configuration file
         SubnodeConfiguration myconfig = ConfigPlugins.getProjectAndStepConfig(title, step);
         xslt = myconfig.getString("xslt-url", "http://files.intranda.com/123");
+        xsltCacheTtl = myconfig.getLong("xslt-cache-ttl", 300);
+        streamTransformation = myconfig.getBoolean("stream-transformation", false);
         mycoreApi = myconfig.getString("mycore-api", "https://mycore.io/123");
         mycoreLogin = myconfig.getString("mycore-login", "login");
         mycorePassword = myconfig.getString("mycore-password", "password");
         ingestMaxTries = myconfig.getInt("max-tries", 3);
+        MycoreRequestController controller =
+                MycoreRequestController.getInstance(mycoreApi, myconfig.getInt("request-max-concurrency", 16));
+        MycoreClientSettings settings = new MycoreClientSettings();
+        settings.setHttp2(myconfig.getBoolean("http2", true));
+        settings.setConnectTimeout(myconfig.getLong("connect-timeout", 10));
+        settings.setRequestTimeout(myconfig.getLong("request-timeout", 60));
+        settings.setMinTransferRate(myconfig.getLong("min-transfer-rate", 256));
+        settings.setRetries(myconfig.getInt("request-retries", 5));
+        settings.setBackoff(myconfig.getLong("request-backoff", 1000));
+        BandwidthLimiter limiter = BandwidthLimiter.getInstance(mycoreApi);
+        limiter.setProfiles(readBandwidthProfiles(myconfig));
+        restClient = new MycoreRestClient(mycoreLogin, mycorePassword, controller, limiter, settings);
+        uploadThreads = myconfig.getInt("upload-threads", 4);
+        uploadVirtualThreads = myconfig.getBoolean("upload-virtual-threads", false);
+        hashWhileUploading = myconfig.getBoolean("hash-while-uploading", false);
+        compressXml = myconfig.getBoolean("compress-xml", false);
+        useChecksumCache = myconfig.getBoolean("checksum-cache", true);
+        resumeIngest = myconfig.getBoolean("resume", true);
+        deltaIngest = myconfig.getBoolean("delta-ingest", false);
+        targetedVerification = myconfig.getBoolean("targeted-verification", true);
+        IngestScheduler.getInstance()
+                .setLimits(myconfig.getInt("scheduler-max-connections", 16),
+                        myconfig.getLong("scheduler-max-megabytes", 512) * 1024 * 1024);
         log.info("MycoreIngest step plugin initialized");
     }
 
+    /**
+     * read the time-of-day profiles of the bandwidth limit
+     *
+     * @param myconfig
+     * @return
+     */
+    private static List<BandwidthProfile> readBandwidthProfiles(SubnodeConfiguration myconfig) {
+        List<BandwidthProfile> profiles = new ArrayList<>();
+        for (HierarchicalConfiguration hc : myconfig.configurationsAt("bandwidth/profile")) {
+            try {
+                profiles.add(new BandwidthProfile(LocalTime.parse(hc.getString("[@from]", "00:00")),
+                        LocalTime.parse(hc.getString("[@to]", "00:00")),
+                        hc.getLong("[@kilobytes-per-second]", 0) * 1024, hc.getDouble("[@requests-per-second]", 0)));
+            } catch (DateTimeParseException e) {
+                log.error("Bandwidth profile with invalid time is ignored: " + e.getParsedString());
+            }
+        }
+        return profiles;
+    }
+
     @Override
     public PluginGuiType getPluginGuiType() {
         return PluginGuiType.NONE;
@@ -142,67 +202,179 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
     @Override
     public PluginReturnValue run() {
         ingestCurrentTry = 0;
-        metses = new ArrayList<>();
-        medias = new ArrayList<>();
-        altos = new ArrayList<>();
+        metses = new IngestFileRegistry();
+        medias = new IngestFileRegistry();
+        altos = new IngestFileRegistry();
         receipt = new IngestReceipt();
         receipt.setStatus("STARTED");
+        metrics = IngestMetrics.getInstance().startRun();
+        receiptWriter = null;
+        try {
+            receiptWriter = new ReceiptWriter(getJournalFolder(), receipt);
+            receiptWriter.start();
+        } catch (IOException | SwapException e) {
+            log.error("Error while determining the folder for the receipt", e);
+        }
+        prefetch = null;
+        try {
+            return ingest();
+        } finally {
+            // stop the background work and finish the receipt and the metrics on every exit, only the first call of
+            // writeReceipt has an effect
+            if (prefetch != null) {
+                prefetch.cancel();
+                prefetch = null;
+            }
+            writeReceipt(false, "Ingest was aborted");
+        }
+    }
+
+    /**
+     * export the METS file, create volume and derivative and upload and verify all files
+     *
+     * @return
+     */
+    private PluginReturnValue ingest() {
+        checksumCache = null;
+        if (useChecksumCache) {
+            try {
+                checksumCache = ChecksumCache.load(getJournalFolder());
+            } catch (IOException | SwapException e) {
+                log.error("Error while loading the checksum cache, all checksums are generated again", e);
+            }
+        }
+
+        // continue an interrupted ingest if there is one
+        stateStore = null;
+        ingestState = null;
+        if (resumeIngest) {
+            try {
+                stateStore = new IngestStateStore(getJournalFolder());
+                ingestState = stateStore.load();
+            } catch (IOException | SwapException e) {
+                log.error("Error while loading the state of a previous ingest", e);
+            }
+        }
+        if (ingestState == null) {
+            ingestState = new IngestState();
+        }
+
+        // in delta mode the derivative of the last successful ingest is updated
+        previousMedias = new IngestFileRegistry();
+        previousAltos = new IngestFileRegistry();
+        if (deltaIngest && ingestState.getDerivative() == null) {
+            IngestReceipt previous = loadLatestReceipt();
+            if (previous != null) {
+                log.info("Delta ingest into the derivative " + previous.getDerivative() + " of the previous ingest");
+                for (IngestFile f : previous.getFiles()) {
+                    if ("media".equals(f.getGoobiFileType())) {
+                        previousMedias.add(f);
+                    } else if ("alto".equals(f.getGoobiFileType())) {
+                        previousAltos.add(f);
+                    }
+                }
+                ingestState.setVolume(previous.getVolume());
+                ingestState.setDerivative(previous.getDerivative());
+            }
+        }
+
+        // list the folders and generate the checksums while the METS file is exported and the volume is created
+        try {
+            List<String> folders =
+                    List.of(step.getProzess().getImagesTifDirectory(false), step.getProzess().getOcrAltoDirectory());
+            prefetch = FolderPrefetch.start(folders, !hashWhileUploading || previousMedias.size() > 0
+                    || previousAltos.size() > 0, checksumCache);
+        } catch (IOException | SwapException e) {
+            log.error("Error while determining the folders of the process", e);
+        }
 
         // export the mets file
         Path metsfile;
-        try {
+        try (IngestMetrics.Phase phase = metrics.phase("export")) {
             metsfile = exportMetsFile();
         } catch (PreferencesException | WriteException | DocStructHasNoTypeException | MetadataTypeNotAllowedException
                 | ReadException | TypeNotAllowedForParentException | IOException | InterruptedException
                 | ExportFileException | UghHelperException | SwapException | DAOException e) {
             log.error("Error while executing the METS-Export", e);
+            writeReceipt(false, "Error while executing the METS-Export: " + e.getMessage());
             return PluginReturnValue.ERROR;
         }
 
-        // do an xslt convert of the mets file
-        String xmlResult = null;
-        try {
-            xmlResult = xslTranform(metsfile);
-        } catch (IOException | TransformerException e) {
-            log.error("Error while doing the XSLT processing for the METS file", e);
-            writeErrorToJournal("Error while doing the XSLT processing for the METS file: " + e.getMessage());
-            return PluginReturnValue.ERROR;
-        }
-
-        // create volume in mycore
-        String volumeLocation = null;
-        try {
-            volumeLocation = createVolume(xmlResult);
-            log.info("MyCoRe passed back this URL for the volume: " + volumeLocation);
+        String volumeLocation = ingestState.getVolume();
+        if (volumeLocation != null) {
+            log.info("Continue the previous ingest into the existing volume " + volumeLocation);
             receipt.setVolume(volumeLocation);
-        } catch (IOException e) {
-            log.error("Error while creating the volume", e);
-            writeErrorToJournal("Error while creating the volume: " + e.getMessage());
-            return PluginReturnValue.ERROR;
+        } else {
+            // do an xslt convert of the mets file, in streaming mode the conversion runs while the volume is created
+            Transformer transformer;
+            String xmlResult = null;
+            try (IngestMetrics.Phase phase = metrics.phase("transformation")) {
+                transformer = createTransformer();
+                if (!streamTransformation) {
+                    xmlResult = xslTranform(metsfile, transformer);
+                }
+            } catch (IOException | TransformerException e) {
+                log.error("Error while doing the XSLT processing for the METS file", e);
+                writeErrorToJournal("Error while doing the XSLT processing for the METS file: " + e.getMessage());
+                return PluginReturnValue.ERROR;
+            }
+
+            // create volume in mycore
+            try (IngestMetrics.Phase phase = metrics.phase("volume")) {
+                if (streamTransformation) {
+                    volumeLocation = createVolume(metsfile, transformer);
+                } else {
+                    volumeLocation = createVolume(xmlResult);
+                }
+                log.info("MyCoRe passed back this URL for the volume: " + volumeLocation);
+                receipt.setVolume(volumeLocation);
+                ingestState.setVolume(volumeLocation);
+                saveIngestState();
+            } catch (TransformerException e) {
+                log.error("Error while doing the XSLT processing for the METS file", e);
+                writeErrorToJournal("Error while doing the XSLT processing for the METS file: " + e.getMessage());
+                return PluginReturnValue.ERROR;
+            } catch (IOException e) {
+                log.error("Error while creating the volume", e);
+                writeErrorToJournal("Error while creating the volume: " + e.getMessage());
+                return PluginReturnValue.ERROR;
+            }
         }
 
         // create derivative in mycore
-        String derivativeLocation = null;
-        String mainDoc = Path.of(step.getProzess().getRepresentativeImageAsString()).getFileName().toString();
-        try {
-            derivativeLocation = createDerivativeForVolume(volumeLocation, mainDoc);
-            log.info("MyCoRe passed back this URL for the derivative: " + derivativeLocation);
+        String derivativeLocation = ingestState.getDerivative();
+        if (derivativeLocation != null) {
+            log.info("Continue the previous ingest into the existing derivative " + derivativeLocation);
             receipt.setDerivative(derivativeLocation);
-        } catch (IOException e) {
-            log.error("Error while creating the derivative", e);
-            writeErrorToJournal("Error while creating the derivative: " + e.getMessage());
-            return PluginReturnValue.ERROR;
+            restoreIngestedFiles();
+        } else {
+            String mainDoc = Path.of(step.getProzess().getRepresentativeImageAsString()).getFileName().toString();
+            try (IngestMetrics.Phase phase = metrics.phase("derivative")) {
+                derivativeLocation = createDerivativeForVolume(volumeLocation, mainDoc);
+                log.info("MyCoRe passed back this URL for the derivative: " + derivativeLocation);
+                receipt.setDerivative(derivativeLocation);
+                ingestState.setDerivative(derivativeLocation);
+                saveIngestState();
+            } catch (IOException e) {
+                log.error("Error while creating the derivative", e);
+                writeErrorToJournal("Error while creating the derivative: " + e.getMessage());
+                return PluginReturnValue.ERROR;
+            }
         }
 
-        try {
+        try (UploadExecutor uploads = new UploadExecutor(uploadThreads, uploadVirtualThreads);
+                IngestScheduler.Ticket ticket = IngestScheduler.getInstance().register(step.getProzess().getTitel())) {
+            schedulerTicket = ticket;
 
             // upload regular METS file
             IngestFile fmets = new IngestFile();
             fmets.setGoobiFilePath(metsfile.toString());
             fmets.setName("goobi_mets.xml");
             fmets.setGoobiFileType("mets");
-            fmets.setGoobiSize(Files.size(metsfile));
-            fmets.setGoobiChecksum(md5Hex(metsfile));
+            setFileAttributes(fmets, metsfile);
+            if (!hashWhileUploading) {
+                fmets.setGoobiChecksum(md5Hex(metsfile, checksumCache));
+            }
             metses.add(fmets);
 
             // upload METS anchor file
@@ -211,56 +383,100 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
             fmetsanchor.setGoobiFilePath(anchor.toString());
             fmetsanchor.setName("goobi_mets_anchor.xml");
             fmetsanchor.setGoobiFileType("mets");
-            fmetsanchor.setGoobiSize(Files.size(anchor));
-            fmetsanchor.setGoobiChecksum(md5Hex(anchor));
+            setFileAttributes(fmetsanchor, anchor);
+            if (!hashWhileUploading) {
+                fmetsanchor.setGoobiChecksum(md5Hex(anchor, checksumCache));
+            }
             metses.add(fmetsanchor);
 
             // try several times to ingest the files
             while (!ingestOk && ingestCurrentTry < ingestMaxTries) {
                 ingestCurrentTry++;
-
-                // if not uploaded successfully before try it two more times max
-                if (!fmets.isValid() && fmets.getUploadCounter() < ingestMaxTries) {
-                    fmets.setUploadCounter(fmets.getUploadCounter() + 1);
-                    uploadFile(derivativeLocation + "/contents/", metsfile, "application/xml", "goobi_mets.xml");
+                // after the first round only the files that are not valid yet are handled
+                boolean pendingOnly = targetedVerification && ingestCurrentTry > 1;
+
+                try (IngestMetrics.Phase phase = metrics.phase("upload")) {
+                    // if not uploaded successfully before try it two more times max
+                    Map<Path, IngestFile> metsUploads = new LinkedHashMap<>();
+                    if (!fmets.isValid() && fmets.getUploadCounter() < ingestMaxTries) {
+                        metsUploads.put(metsfile, fmets);
+                    }
+                    if (!fmetsanchor.isValid() && fmetsanchor.getUploadCounter() < ingestMaxTries) {
+                        metsUploads.put(anchor, fmetsanchor);
+                    }
+
+                    // upload image derivatives and ALTO files at the same time
+                    Map<Path, IngestFile> mediaUploads;
+                    Map<Path, IngestFile> altoUploads;
+                    if (pendingOnly) {
+                        mediaUploads = getPendingFiles(medias, ingestMaxTries);
+                        altoUploads = getPendingFiles(altos, ingestMaxTries);
+                    } else {
+                        // list both folders with all file attributes at the same time
+                        String mediaFolder = step.getProzess().getImagesTifDirectory(false);
+                        String altoFolder = step.getProzess().getOcrAltoDirectory();
+                        Map<String, Map<Path, BasicFileAttributes>> folders = ingestCurrentTry == 1 && prefetch != null
+                                ? prefetch.getFiles()
+                                : FolderScanner.scanAll(List.of(mediaFolder, altoFolder));
+                        mediaUploads = getFolderUploads(folders.get(mediaFolder), "media", medias, previousMedias);
+                        altoUploads = getFolderUploads(folders.get(altoFolder), "alto", altos, previousAltos);
+                    }
+
+                    // the scheduler prefers processes with less remaining bytes, so they have to be known before the
+                    // first upload asks for a slot
+                    ticket.setRemaining(getSize(metsUploads) + getSize(mediaUploads) + getSize(altoUploads));
+                    submitUploads(metsUploads, derivativeLocation + "/contents/", "application/xml", uploads);
+                    submitUploads(mediaUploads, derivativeLocation + "/contents/", "image/tif", uploads);
+                    submitUploads(altoUploads, derivativeLocation + "/contents/alto/", "application/xml", uploads);
+                    uploads.awaitAll();
                 }
-                if (!fmetsanchor.isValid() && fmetsanchor.getUploadCounter() < ingestMaxTries) {
-                    fmetsanchor.setUploadCounter(fmetsanchor.getUploadCounter() + 1);
-                    uploadFile(derivativeLocation + "/contents/", anchor, "application/xml", "goobi_mets_anchor.xml");
+                try (IngestMetrics.Phase phase = metrics.phase("checksums")) {
+                    assignChecksums(medias);
+                    assignChecksums(altos);
                 }
+                saveChecksumCache();
 
-                // upload image derivatives and ALTO files
-                uploadFolder(step.getProzess().getImagesTifDirectory(false), "media", medias,
-                        derivativeLocation + "/contents/", "image/tif");
-                uploadFolder(step.getProzess().getOcrAltoDirectory(), "alto", altos,
-                        derivativeLocation + "/contents/alto/", "application/xml");
-
-                // request content information for images and mets file
-                requestIngestedContentInformation(derivativeLocation, "/contents/", metses);
-                requestIngestedContentInformation(derivativeLocation, "/contents/", medias);
-                requestIngestedContentInformation(derivativeLocation, "/contents/alto/", altos);
+                // remove files of the previous ingest that do not exist anymore
+                if (ingestCurrentTry == 1) {
+                    DeltaIngest.deleteRemovedFiles(restClient, previousMedias, medias);
+                    DeltaIngest.deleteRemovedFiles(restClient, previousAltos, altos);
+                }
 
-                validateFiles(derivativeLocation, "/contents/", "/contents/alto/");
+                // request content information for images and mets file, each directory is requested only once
+                try (IngestMetrics.Phase phase = metrics.phase("verification")) {
+                    DerivativeListing listing = new DerivativeListing(restClient, derivativeLocation);
+                    listing.addDirectory("/contents/", metses, medias);
+                    listing.addDirectory("/contents/alto/", altos);
+                    if (pendingOnly) {
+                        listing.verifyPending();
+                    } else {
+                        listing.verifyAll();
+                    }
+                    validateFiles(derivativeLocation, "/contents/", "/contents/alto/");
+                }
+                saveIngestState();
+                appendToReceipt(true);
             }
 
-            // add files into receipt
-            receipt.getFiles().addAll(metses);
-            receipt.getFiles().addAll(medias);
-            receipt.getFiles().addAll(altos);
+            // add the remaining files into receipt
+            appendToReceipt(false);
             log.info("Images were uploaded to MyCoRe derivative");
         } catch (IOException | SwapException e) {
+            saveChecksumCache();
             log.error("Error while uploading images to the derivative", e);
             writeErrorToJournal("Error while uploading images to the derivative: " + e.getMessage());
             return PluginReturnValue.ERROR;
         }
 
         // write summary information into properties
-        try {
-            writeProperty("Ingest Status", String.valueOf(ingestOk));
-            writeProperty("Ingest Details", ingestMessage);
-            writeProperty("Ingest Timestamp", LocalDateTime.now().toString());
-            writeProperty("Derivat URL", derivativeLocation);
-            writeSummaryProperties();
+        try (IngestMetrics.Phase phase = metrics.phase("properties")) {
+            PropertyBatch properties = new PropertyBatch("MyCoRe");
+            properties.put("Ingest Status", String.valueOf(ingestOk));
+            properties.put("Ingest Details", ingestMessage);
+            properties.put("Ingest Timestamp", LocalDateTime.now().toString());
+            properties.put("Derivat URL", derivativeLocation);
+            writeSummaryProperties(properties);
+            properties.save(step.getProzess());
             log.info("Properties with ingest results into MyCoRe were created");
         } catch (IOException | SwapException | DAOException e) {
             log.error("Error while writing summary information of MyCoRe ingest as properties", e);
@@ -269,6 +485,9 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
             return PluginReturnValue.ERROR;
         }
 
+        if (ingestOk && stateStore != null) {
+            stateStore.delete();
+        }
         writeReceipt(ingestOk, ingestMessage);
         log.info("MycoreIngest step plugin executed");
         if (ingestOk) {
@@ -279,22 +498,22 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
     }
 
     /**
-     * write summary information into the properties of the process
+     * collect summary information for the properties of the process
      *
+     * @param properties
      * @throws DAOException
      * @throws SwapException
      * @throws IOException
      */
-    private void writeSummaryProperties() throws IOException, SwapException, DAOException {
+    private void writeSummaryProperties(PropertyBatch properties) throws IOException, SwapException, DAOException {
 
-        // File sizes master in Goobi
+        // File sizes master in Goobi, the sizes are read while the folder is listed
         long sizeMaster = 0;
         String masterfolder = step.getProzess().getImagesOrigDirectory(false);
-        List<Path> list = StorageProvider.getInstance().listFiles(masterfolder);
-        for (Path p : list) {
-            sizeMaster += Files.size(p);
+        for (BasicFileAttributes attrs : FolderScanner.scan(masterfolder).values()) {
+            sizeMaster += attrs.size();
         }
-        writeProperty("Speicherplatz Master Goobi", String.valueOf(sizeMaster));
+        properties.put("Speicherplatz Master Goobi", String.valueOf(sizeMaster));
 
         // File sizes media in Goobi and MyCoRe
         long sizeMediaGoobi = 0;
@@ -303,9 +522,9 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
             sizeMediaGoobi += i.getGoobiSize();
             sizeMediaMyCoRe += i.getMycoreSize();
         }
-        writeProperty("Anzahl der eingespielten Bilder", String.valueOf(medias.size()));
-        writeProperty("Speicherplatz Derivate Goobi", String.valueOf(sizeMediaGoobi));
-        writeProperty("Speicherplatz Derivate MyCoRe", String.valueOf(sizeMediaMyCoRe));
+        properties.put("Anzahl der eingespielten Bilder", String.valueOf(medias.size()));
+        properties.put("Speicherplatz Derivate Goobi", String.valueOf(sizeMediaGoobi));
+        properties.put("Speicherplatz Derivate MyCoRe", String.valueOf(sizeMediaMyCoRe));
 
         // File sizes alto in Goobi and MyCoRe
         long sizeAltoGoobi = 0;
@@ -314,69 +533,106 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
             sizeAltoGoobi += i.getGoobiSize();
             sizeAltoMyCoRe += i.getMycoreSize();
         }
-        writeProperty("Anzahl der eingespielten ALTO-Dateien", String.valueOf(altos.size()));
-        writeProperty("Speicherplatz ALTO Goobi", String.valueOf(sizeAltoGoobi));
-        writeProperty("Speicherplatz ALTO MyCoRe", String.valueOf(sizeAltoMyCoRe));
+        properties.put("Anzahl der eingespielten ALTO-Dateien", String.valueOf(altos.size()));
+        properties.put("Speicherplatz ALTO Goobi", String.valueOf(sizeAltoGoobi));
+        properties.put("Speicherplatz ALTO MyCoRe", String.valueOf(sizeAltoMyCoRe));
 
     }
 
     /**
-     * write one specific property
+     * append the files to the receipt
      *
-     * @param string
-     * @param valueOf
+     * @param validOnly append only the files that were verified successfully
      */
-    private void writeProperty(String name, String value) {
-        GoobiProperty prop = new GoobiProperty(PropertyOwnerType.PROCESS);
-        prop.setOwner(step.getProzess());
-        prop.setPropertyName(name);
-        prop.setType(PropertyType.getByName("String"));
-        prop.setPropertyValue(value);
-        prop.setContainer("MyCoRe");
-        step.getProzess().getEigenschaften().add(prop);
-        PropertyManager.saveProperty(prop);
+    private void appendToReceipt(boolean validOnly) {
+        if (receiptWriter != null) {
+            for (IngestFileRegistry list : List.of(metses, medias, altos)) {
+                List<IngestFile> files = new ArrayList<>();
+                for (IngestFile f : list) {
+                    if (!validOnly || f.isValid()) {
+                        files.add(f);
+                    }
+                }
+                receiptWriter.append(files);
+            }
+        }
     }
 
     /**
-     * Finish the receipt and write it into the filesystem
+     * Finish the receipt and add it to the journal, only the first call has an effect
      *
      * @param status
      * @param details
      */
     private void writeReceipt(boolean status, String details) {
-        receipt.setStatus(status ? "FINISHED" : "ERROR");
-        receipt.setDetails(details);
-        receipt.setEnd(LocalDateTime.now());
-
-        // write object as xml file
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd-HHmmssSSS");
-        JavaTimeModule jsr310 = new JavaTimeModule();
-        jsr310.addSerializer(LocalDateTime.class, new LocalDateTimeSerializer(formatter));
-        jsr310.addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer(formatter));
-        ObjectMapper om = new XmlMapper().registerModule(jsr310)
-                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        om.setSerializationInclusion(Include.NON_EMPTY);
-        om.enable(SerializationFeature.INDENT_OUTPUT);
-
-        try {
-            Path folder = Paths.get(step.getProzess().getProcessDataDirectory(),
-                    ConfigurationHelper.getInstance().getFolderForInternalJournalFiles());
-            if (!StorageProvider.getInstance().isFileExists(folder)) {
-                StorageProvider.getInstance().createDirectories(folder);
-            }
-            String filename = "ingest-receipt-" + receipt.getEnd().format(formatter) + ".xml";
-            Path file = Path.of(folder.toString(), filename);
-            om.writeValue(file.toFile(), receipt);
-
+        if (metrics != null) {
+            receipt.setTimings(metrics.getTimings());
+            metrics.finish(status);
+            metrics = null;
+        }
+        if (receiptWriter != null && receiptWriter.finish(status ? "FINISHED" : "ERROR", details)) {
             JournalEntry entry = new JournalEntry(step.getProzess().getId(), new Date(), "- automatic -", LogType.FILE,
                     "Receipt for the ingest into MyCoRe created", EntryType.PROCESS);
-            entry.setFilename(file.toString());
+            entry.setFilename(receiptWriter.getFile().toString());
             JournalManager.saveJournalEntry(entry);
+        }
+    }
 
+    /**
+     * find the receipt of the latest successful ingest of this process
+     *
+     * @return the receipt or null if there was no successful ingest
+     */
+    private IngestReceipt loadLatestReceipt() {
+        try {
+            return ReceiptWriter.findLatest(getJournalFolder());
         } catch (IOException | SwapException e) {
-            log.error("Error writing the receipt to the filesystem", e);
+            log.error("Error while searching the receipt of the previous ingest", e);
+        }
+        return null;
+    }
+
+    /**
+     * get the folder of the process where the receipts and other internal files are stored
+     *
+     * @return
+     * @throws IOException
+     * @throws SwapException
+     */
+    private Path getJournalFolder() throws IOException, SwapException {
+        return Paths.get(step.getProzess().getProcessDataDirectory(),
+                ConfigurationHelper.getInstance().getFolderForInternalJournalFiles());
+    }
+
+    /**
+     * write the current status of the ingest into the process folder
+     */
+    private void saveIngestState() {
+        if (stateStore != null) {
+            List<IngestFile> files = new ArrayList<>();
+            files.addAll(metses.getFiles());
+            files.addAll(medias.getFiles());
+            files.addAll(altos.getFiles());
+            ingestState.setFiles(files);
+            stateStore.save(ingestState);
         }
+    }
 
+    /**
+     * take over the media and ALTO files of an interrupted ingest, files that were changed since are uploaded again
+     */
+    private void restoreIngestedFiles() {
+        IngestStateStore.restoreFiles(ingestState, medias, altos);
+        log.info("Restored " + medias.size() + " media files and " + altos.size() + " ALTO files of previous ingest");
+    }
+
+    /**
+     * write new checksums into the checksum cache of the process
+     */
+    private void saveChecksumCache() {
+        if (checksumCache != null) {
+            checksumCache.save();
+        }
     }
 
     /**
@@ -424,13 +680,13 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
     }
 
     /**
-     * do the xsl transformation of the mets file
+     * create the transformer for the mets file using the cached xsl file
      *
-     * @param metsfile
+     * @return
      * @throws IOException
      * @throws TransformerException
      */
-    private String xslTranform(Path metsfile) throws IOException, TransformerException {
+    private Transformer createTransformer() throws IOException, TransformerException {
 
         // first get the mycore id from a property
         String mycoreId = null;
@@ -443,23 +699,65 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
 
         // if property exists to transformation
         if (mycoreId != null) {
-
-            Source xmlSource = new StreamSource(metsfile.toFile());
-            URL xsltUrl = new URL(xslt);
-            Source xsltSource = new StreamSource(xsltUrl.openStream());
-
-            TransformerFactory factory = TransformerFactory.newInstance();
-            Transformer transformer = factory.newTransformer(xsltSource);
+            Transformer transformer = XsltTemplatesCache.getTemplates(xslt, xsltCacheTtl * 1000).newTransformer();
             transformer.setParameter("parentID", mycoreId);
+            return transformer;
+        } else {
+            throw new IOException("No MyCoRe identifier could be found as property with name 'MyCore-ID'");
+        }
+    }
 
-            StringWriter writer = new StringWriter();
-            StreamResult result = new StreamResult(writer);
-            transformer.transform(xmlSource, result);
-            String xmlString = writer.toString();
-            return xmlString;
+    /**
+     * do the xsl transformation of the mets file
+     *
+     * @param metsfile
+     * @param transformer
+     * @throws TransformerException
+     */
+    private String xslTranform(Path metsfile, Transformer transformer) throws TransformerException {
+        Source xmlSource = new StreamSource(metsfile.toFile());
+        StringWriter writer = new StringWriter();
+        StreamResult result = new StreamResult(writer);
+        transformer.transform(xmlSource, result);
+        String xmlString = writer.toString();
+        return xmlString;
+    }
 
+    /**
+     * create a volume inside of MyCoRe, the xsl transformation of the mets file is streamed directly into the request
+     *
+     * @param metsfile
+     * @param transformer
+     * @return
+     * @throws IOException
+     * @throws TransformerException
+     */
+    private String createVolume(Path metsfile, Transformer transformer) throws IOException, TransformerException {
+        AtomicReference<BoundedCopyOutputStream> excerpt = new AtomicReference<>();
+        HttpResponse<String> response;
+        try {
+            response = restClient.post(mycoreApi + "objects", "application/xml", Files.size(metsfile), out -> {
+                BoundedCopyOutputStream copy = new BoundedCopyOutputStream(out, 64 * 1024);
+                excerpt.set(copy);
+                transformer.transform(new StreamSource(metsfile.toFile()), new StreamResult(copy));
+            });
+        } catch (IOException e) {
+            if (e.getCause() instanceof TransformerException) {
+                throw (TransformerException) e.getCause();
+            }
+            throw e;
+        }
+
+        if (response.statusCode() >= 200 && response.statusCode() < 300) {
+            return response.headers()
+                    .firstValue("location")
+                    .orElseThrow(() -> new IOException("No location could be found for created volume in MyCoRe."));
         } else {
-            throw new IOException("No MyCoRe identifier could be found as property with name 'MyCore-ID'");
+            if (excerpt.get() != null) {
+                log.error("Object sent to MyCoRe for creation of volume: " + excerpt.get().getCopy());
+            }
+            throw new IOException("Response of MyCoRe for creation of volume was not successful: "
+                    + response.statusCode() + " - " + response.body());
         }
     }
 
@@ -471,19 +769,15 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
      * @throws IOException
      */
     private String createVolume(String sourceXml) throws IOException {
-        HttpResponse<String> response = Unirest.post(mycoreApi + "objects").header("Content-Type", "application/xml")
-                .header("Accept", "application/xml").basicAuth(mycoreLogin, mycorePassword).body(sourceXml).asString();
+        HttpResponse<String> response = restClient.post(mycoreApi + "objects", "application/xml", sourceXml);
 
-        if (response.isSuccess()) {
-            String location = response.getHeaders().getFirst("location");
-            if (location != null) {
-                return location;
-            } else {
-                throw new IOException("No location could be found for created volume in MyCoRe.");
-            }
+        if (response.statusCode() >= 200 && response.statusCode() < 300) {
+            return response.headers()
+                    .firstValue("location")
+                    .orElseThrow(() -> new IOException("No location could be found for created volume in MyCoRe."));
         } else {
             throw new IOException("Response of MyCoRe for creation of volume was not successful: "
-                    + response.getStatus() + " - " + response.getBody());
+                    + response.statusCode() + " - " + response.body());
         }
     }
 
@@ -496,143 +790,226 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
      * @throws IOException
      */
     private String createDerivativeForVolume(String volumeLocation, String mainDoc) throws IOException {
-        HttpResponse<String> response = Unirest.post(volumeLocation + "/derivates")
-                .header("Content-Type", "application/x-www-form-urlencoded")
-                .basicAuth(mycoreLogin, mycorePassword)
-                .field("maindoc", mainDoc)
-                .asString();
-
-        if (response.isSuccess()) {
-            String location = response.getHeaders().getFirst("location");
-            if (location != null) {
-                return location;
-            } else {
-                throw new IOException("No location could be found for created derivative in MyCoRe.");
-            }
+        HttpResponse<String> response = restClient.post(volumeLocation + "/derivates",
+                "application/x-www-form-urlencoded", "maindoc=" + URLEncoder.encode(mainDoc, StandardCharsets.UTF_8));
+
+        if (response.statusCode() >= 200 && response.statusCode() < 300) {
+            return response.headers()
+                    .firstValue("location")
+                    .orElseThrow(() -> new IOException("No location could be found for created derivative in MyCoRe."));
         } else {
             throw new IOException("Response of MyCoRe for creation of derivative was not successful: "
-                    + response.getStatus() + " - " + response.getBody());
+                    + response.statusCode() + " - " + response.body());
         }
     }
 
     /**
-     * upload all files of a folder to derivative in MyCoRe
+     * register all files of a folder and find the files that have to be uploaded to the derivative in MyCoRe
      *
-     * @param folder
+     * @param files files of the folder with their attributes
      * @param type
      * @param list
+     * @param previous files of the previous ingest in delta mode, unchanged files are not uploaded again
+     * @return files to upload
+     * @throws IOException
+     */
+    private Map<Path, IngestFile> getFolderUploads(Map<Path, BasicFileAttributes> files, String type,
+            IngestFileRegistry list, IngestFileRegistry previous) throws IOException {
+        Map<Path, IngestFile> created = new LinkedHashMap<>();
+        Map<Path, IngestFile> pending = list.register(files, type, created, ingestMaxTries);
+
+        // the delta mode needs the checksums before the upload, otherwise they are assigned after the upload
+        if (previous.size() > 0 && !created.isEmpty()) {
+            Map<Path, String> checksums = getChecksums(created.keySet());
+            for (Map.Entry<Path, IngestFile> e : created.entrySet()) {
+                e.getValue().setGoobiChecksum(checksums.get(e.getKey()));
+            }
+        }
+
+        // files that were not changed since the previous ingest are taken over
+        DeltaIngest.takeOverUnchanged(created, pending, previous);
+        return pending;
+    }
+
+    /**
+     * schedule the upload of files to the derivative in MyCoRe
+     *
+     * @param files
      * @param location
      * @param mimetype
+     * @param uploads
+     */
+    private void submitUploads(Map<Path, IngestFile> files, String location, String mimetype, UploadExecutor uploads) {
+        for (Map.Entry<Path, IngestFile> e : files.entrySet()) {
+            IngestFile f = e.getValue();
+            f.setUploadCounter(f.getUploadCounter() + 1);
+            uploads.submit(() -> uploadFile(location, e.getKey(), mimetype, f));
+        }
+    }
+
+    /**
+     * get the size of files that are going to be uploaded
+     *
+     * @param files
+     * @return
+     */
+    private static long getSize(Map<Path, IngestFile> files) {
+        long size = 0;
+        for (IngestFile f : files.values()) {
+            if (f.getGoobiSize() != null) {
+                size += f.getGoobiSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * get the checksums of files, checksums that were generated in the background are used
+     *
+     * @param files
+     * @return
      * @throws IOException
-     * @throws SwapException
      */
-    private void uploadFolder(String folder, String type, List<IngestFile> list, String location, String mimetype)
-            throws IOException, SwapException {
-        List<Path> filelist = StorageProvider.getInstance().listFiles(folder);
-        for (Path p : filelist) {
-            IngestFile f = null;
-            for (IngestFile inf : list) {
-                // if file is known, reupload it
-                if (inf.getGoobiFilePath().equals(p.toString())) {
-                    f = inf;
-                    break;
-                }
+    private Map<Path, String> getChecksums(Collection<Path> files) throws IOException {
+        Map<Path, String> known = Collections.emptyMap();
+        if (prefetch != null) {
+            try {
+                known = prefetch.getChecksums();
+            } catch (IOException e) {
+                log.warn("Checksums could not be generated in the background, they are generated again", e);
+            }
+        }
+        Map<Path, String> checksums = new LinkedHashMap<>();
+        List<Path> missing = new ArrayList<>();
+        for (Path p : files) {
+            String md5 = known.get(p);
+            if (md5 != null) {
+                checksums.put(p, md5);
+            } else {
+                missing.add(p);
+            }
+        }
+        if (!missing.isEmpty()) {
+            checksums.putAll(ChecksumService.getInstance().md5Hex(missing, checksumCache));
+        }
+        return checksums;
+    }
+
+    /**
+     * set the checksums of all files that do not have one yet, unless they are generated during the upload
+     *
+     * @param list
+     * @throws IOException
+     */
+    private void assignChecksums(IngestFileRegistry list) throws IOException {
+        if (hashWhileUploading) {
+            return;
+        }
+        Map<Path, IngestFile> missing = new LinkedHashMap<>();
+        for (IngestFile f : list) {
+            if (f.getGoobiChecksum() == null) {
+                missing.put(Path.of(f.getGoobiFilePath()), f);
             }
-            // if file is unknown, create and add it
-            if (f == null) {
-                f = new IngestFile();
-                f.setGoobiFilePath(p.toString());
-                f.setName(p.getFileName().toString());
-                f.setGoobiFileType(type);
-                f.setGoobiSize(Files.size(p));
-                f.setGoobiChecksum(md5Hex(p));
-                list.add(f);
+        }
+        if (!missing.isEmpty()) {
+            Map<Path, String> checksums = getChecksums(missing.keySet());
+            for (Map.Entry<Path, IngestFile> e : missing.entrySet()) {
+                e.getValue().setGoobiChecksum(checksums.get(e.getKey()));
             }
+        }
+    }
 
-            // if not uploaded successfully before try it two more times max
-            if (!f.isValid() && f.getUploadCounter() < 3) {
-                f.setUploadCounter(f.getUploadCounter() + 1);
-                uploadFile(location, p, mimetype, p.getFileName().toString());
+    /**
+     * find the known files that are not valid yet without listing the folder again
+     *
+     * @param list
+     * @param maxTries number of uploads of a file after which it is not tried again
+     * @return files to upload
+     */
+    private static Map<Path, IngestFile> getPendingFiles(IngestFileRegistry list, int maxTries) {
+        Map<Path, IngestFile> pending = new LinkedHashMap<>();
+        for (IngestFile f : list) {
+            // if not uploaded successfully before try it again until the maximum of tries is reached
+            if (!f.isValid() && f.getUploadCounter() < maxTries) {
+                pending.put(Path.of(f.getGoobiFilePath()), f);
             }
         }
+        return pending;
     }
 
     /**
-     * upload a file to derivative in MyCoRe
+     * set size and modification date of a file in Goobi
+     *
+     * @param f
+     * @param p
+     * @throws IOException
+     */
+    private static void setFileAttributes(IngestFile f, Path p) throws IOException {
+        IngestFileRegistry.setAttributes(f, Files.readAttributes(p, BasicFileAttributes.class));
+    }
+
+    /**
+     * upload a file to derivative in MyCoRe, if configured the checksum of the file is calculated from the uploaded
+     * bytes. XML files are compressed if configured, a repeated upload after a failed verification is sent uncompressed
      *
      * @param location
      * @param p
      * @param mimetype
-     * @param filename
+     * @param f
      * @throws IOException
      */
-    private void uploadFile(String location, Path p, String mimetype, String filename) throws IOException {
+    private void uploadFile(String location, Path p, String mimetype, IngestFile f) throws IOException {
         log.info("Upload file " + p.toString() + " to MyCoRe");
-        int count = 0;
-        boolean success = false;
-        int status = 0;
-
-        // try up to 3 times to upload a file
-        while (!success && count < 3) {
-            count++;
-            try {
-                HttpResponse<String> response = Unirest.put(location + filename).header("Content-Type", mimetype)
-                        .basicAuth(mycoreLogin, mycorePassword).body(Files.readAllBytes(p)).asString();
-                success = true;
-                status = response.getStatus();
-            } catch (UnirestException | IOException e) {
-                log.error("Error while uploading file (" + count + ")", e);
-            }
-        }
+        MessageDigest digest = hashWhileUploading ? DigestUtils.getMd5Digest() : null;
+        BasicFileAttributes attrs = digest != null ? Files.readAttributes(p, BasicFileAttributes.class) : null;
+
+        // each attempt waits for a free slot of the scheduler that is shared with the other processes, failed uploads
+        // are repeated with backoff by the client without holding the slot
+        long size = Files.size(p);
+        MycoreRestClient.Permit permit = () -> {
+            IngestScheduler.Slot slot = schedulerTicket.acquire(size);
+            IngestMetrics.getInstance().uploadStarted();
+            return () -> {
+                IngestMetrics.getInstance().uploadFinished();
+                slot.close();
+            };
+        };
+        boolean compress = compressXml && "application/xml".equals(mimetype) && f.getUploadCounter() <= 1;
+        int status = restClient.put(location + f.getName(), p, mimetype, digest, compress, permit).statusCode();
 
         if (status < 200 || status >= 300) {
             throw new IOException("Response of MyCoRe for creation of derivative was not successful: " + status);
         }
+        IngestMetrics.getInstance().uploaded(size);
+        if (digest != null) {
+            f.setGoobiChecksum(Hex.encodeHexString(digest.digest()));
+            if (checksumCache != null) {
+                checksumCache.put(p, attrs, f.getGoobiChecksum());
+            }
+        }
     }
 
     /**
-     * Validate content after the mycore ingest
+     * Generate MD5 Checksum for file
      *
-     * @param inLocation
-     * @throws SwapException
+     * @param p
+     * @return
      * @throws IOException
      */
-    private void requestIngestedContentInformation(String inLocation, String locationSuffix, List<IngestFile> list)
-            throws IOException, SwapException {
-        log.info("Request content of ingested content under " + inLocation + locationSuffix + " in MyCoRe");
-        HttpResponse<String> response = Unirest.get(inLocation + locationSuffix).header("Accept", "application/xml")
-                .basicAuth(mycoreLogin, mycorePassword).asString();
-
-        XmlMapper xml = new XmlMapper();
-        xml.registerModule(new JavaTimeModule());
-        xml.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        xml.enable(SerializationFeature.INDENT_OUTPUT);
-        xml.configure(ToXmlGenerator.Feature.WRITE_XML_DECLARATION, true);
-        MycoreDirectory dn = xml.readValue(response.getBody(), MycoreDirectory.class);
-        for (MycoreFile mf : dn.getFiles()) {
-            for (IngestFile f : list) {
-                if (f.getName().equals(mf.getName())) {
-                    f.setMycoreChecksum(mf.getMd5());
-                    f.setMycoreMimeType(mf.getMimeType());
-                    f.setMycoreSize(mf.getSize());
-                    f.setMycoreUrl(inLocation + locationSuffix + mf.getName());
-                    f.setValid(f.getGoobiChecksum().equals(f.getMycoreChecksum()));
-                }
-            }
-        }
+    public static String md5Hex(Path p) throws IOException {
+        return ChecksumService.md5Hex(p);
     }
 
     /**
-     * Generate MD5 Checksum for file
+     * Generate MD5 Checksum for file or take it from the cache if the file was not changed
      *
      * @param p
+     * @param cache
      * @return
      * @throws IOException
      */
-    public static String md5Hex(Path p) throws IOException {
-        try (FileInputStream fis = new FileInputStream(p.toFile())) {
-            return DigestUtils.md5Hex(fis);
-        }
+    public static String md5Hex(Path p, ChecksumCache cache) throws IOException {
+        return ChecksumService.md5Hex(p, cache);
     }
 
     /**
@@ -647,13 +1024,13 @@ public class MycoreIngestStepPlugin implements IStepPluginVersion2 {
      */
     private void validateFiles(String location, String pathimages, String pathalto) throws IOException {
         List<IngestFile> allLists = new ArrayList<>();
-        allLists.addAll(metses);
-        allLists.addAll(medias);
-        allLists.addAll(altos);
+        allLists.addAll(metses.getFiles());
+        allLists.addAll(medias.getFiles());
+        allLists.addAll(altos.getFiles());
 
         // check all image checksums
         for (IngestFile f : allLists) {
-            if (!f.getMycoreChecksum().equals(f.getGoobiChecksum())) {
+            if (!f.isValid()) {
                 ingestOk = false;
                 ingestMessage = "Checksums do not match";
                 return;
@@ -0,0 +1,134 @@
+package de.intranda.goobi.plugins;
+
+import de.intranda.goobi.plugins.model.MycoreFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Streaming parser for the directory listings of MyCoRe. The listing is read with StAX and each file is passed to a
+ * handler as soon as its element was read, so the memory usage does not depend on the size of the listing. Nested
+ * directories are resolved to their path inside of the derivative.
+ */
+public class MycoreListingParser {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /**
+     * receiver of the content of a listing
+     */
+    public interface Handler {
+
+        /**
+         * called for each file of the listing
+         *
+         * @param path path of the directory that contains the file, e.g. /contents/alto/
+         * @param file
+         */
+        void file(String path, MycoreFile file);
+
+        /**
+         * called for each nested directory whose content is part of the listing
+         *
+         * @param path
+         */
+        default void directory(String path) {
+        }
+    }
+
+    private MycoreListingParser() {
+    }
+
+    /**
+     * parse a listing
+     *
+     * @param in
+     * @param path path of the listed directory inside of the derivative
+     * @param handler
+     * @throws IOException
+     */
+    public static void parse(InputStream in, String path, Handler handler) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(in);
+            // paths of the open directory elements and if their content was reported already
+            Deque<String> paths = new ArrayDeque<>();
+            Deque<Boolean> reported = new ArrayDeque<>();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if (!paths.isEmpty() && !reported.peek() && ("file".equals(element) || "directory".equals(element))) {
+                        // the nested directory contains elements, so its content is part of the listing
+                        reported.pop();
+                        reported.push(Boolean.TRUE);
+                        handler.directory(paths.peek());
+                    }
+                    if ("directory".equals(element)) {
+                        if (paths.isEmpty()) {
+                            paths.push(path);
+                            reported.push(Boolean.TRUE);
+                        } else {
+                            paths.push(paths.peek() + reader.getAttributeValue(null, "name") + "/");
+                            reported.push(Boolean.FALSE);
+                        }
+                    } else if ("file".equals(element) && !paths.isEmpty()) {
+                        handler.file(paths.peek(), readFile(reader, paths.peek()));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "directory".equals(reader.getLocalName())) {
+                    paths.pop();
+                    reported.pop();
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Listing of " + path + " could not be parsed", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * read the attributes of a file element
+     *
+     * @param reader
+     * @param path path of the directory that contains the file
+     * @return
+     * @throws IOException if the size is not a number
+     */
+    private static MycoreFile readFile(XMLStreamReader reader, String path) throws IOException {
+        MycoreFile file = new MycoreFile();
+        file.setName(reader.getAttributeValue(null, "name"));
+        file.setMd5(reader.getAttributeValue(null, "md5"));
+        file.setMimeType(reader.getAttributeValue(null, "mimeType"));
+        String size = reader.getAttributeValue(null, "size");
+        if (size != null && !size.isBlank()) {
+            try {
+                file.setSize(Long.valueOf(size.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Size of " + path + file.getName() + " in the listing is not a number: " + size,
+                        e);
+            }
+        }
+        return file;
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        return factory;
+    }
+}
@@ -0,0 +1,241 @@
+package de.intranda.goobi.plugins;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit for the concurrent requests to a MyCoRe instance, shared by all plugin instances that talk to the
+ * same server. The limit grows by one request per round trip as long as the server answers quickly and is reduced
+ * multiplicatively if the latency rises or the server answers with 429 or 503. A Retry-After sent by the server pauses
+ * all requests to this server.
+ */
+@Log4j2
+public class MycoreRequestController {
+
+    private static final Map<String, MycoreRequestController> INSTANCES = new ConcurrentHashMap<>();
+
+    // latency is compared per started megabyte of the request body, so large uploads are not seen as overload
+    private static final long BYTES_PER_UNIT = 1024 * 1024;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double LATENCY_DECREASE = 0.9;
+    private static final double OVERLOAD_DECREASE = 0.5;
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+
+    private final String target;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private int maxLimit;
+    private double limit;
+    private int inFlight;
+    // smallest latency seen recently, slowly forgotten so that the baseline follows changes of the server
+    private double baseline;
+    private long pausedUntil;
+
+    private MycoreRequestController(String target, int maxLimit) {
+        this.target = target;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.min(2, this.maxLimit);
+    }
+
+    /**
+     * get the shared controller for the server of an URL
+     *
+     * @param url
+     * @param maxLimit maximum number of concurrent requests to this server
+     * @return
+     */
+    public static MycoreRequestController getInstance(String url, int maxLimit) {
+        URI uri = URI.create(url);
+        String target = uri.getScheme() + "://" + uri.getAuthority();
+        MycoreRequestController controller =
+                INSTANCES.computeIfAbsent(target, t -> new MycoreRequestController(t, maxLimit));
+        controller.setMaxLimit(maxLimit);
+        return controller;
+    }
+
+    /**
+     * change the maximum number of concurrent requests, the latest configuration wins
+     *
+     * @param maxLimit
+     */
+    public void setMaxLimit(int maxLimit) {
+        lock.lock();
+        try {
+            this.maxLimit = Math.max(1, maxLimit);
+            limit = Math.min(limit, this.maxLimit);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * get the current limit of concurrent requests
+     *
+     * @return
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * wait until a request may be sent
+     *
+     * @throws InterruptedIOException
+     */
+    public void acquire() throws InterruptedIOException {
+        lock.lock();
+        try {
+            while (true) {
+                long pause = pausedUntil - System.currentTimeMillis();
+                if (pause > 0) {
+                    available.await(pause, TimeUnit.MILLISECONDS);
+                } else if (inFlight < Math.max(1, (int) limit)) {
+                    inFlight++;
+                    return;
+                } else {
+                    available.await();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request slot at " + target);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * report a request that was answered by the server without signs of overload
+     *
+     * @param latency time in nanoseconds until the response was received
+     * @param bytes size of the request body, -1 if the size is unknown and the latency can not be compared
+     */
+    public void onSuccess(long latency, long bytes) {
+        double sample = (double) latency / (1 + bytes / BYTES_PER_UNIT);
+        lock.lock();
+        try {
+            inFlight--;
+            if (bytes < 0) {
+                available.signalAll();
+                return;
+            }
+            if (baseline == 0 || sample < baseline) {
+                baseline = sample;
+            } else {
+                baseline += (sample - baseline) * 0.01;
+            }
+            if (sample > baseline * LATENCY_TOLERANCE) {
+                limit = Math.max(1, limit * LATENCY_DECREASE);
+            } else if (inFlight + 1 >= (int) limit) {
+                // increase only if the limit was actually used
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * report a request that was rejected because the server is overloaded (429 or 503)
+     *
+     * @param retryAfter time in milliseconds the server asked to wait, 0 if not given
+     */
+    public void onOverload(long retryAfter) {
+        lock.lock();
+        try {
+            inFlight--;
+            limit = Math.max(1, limit * OVERLOAD_DECREASE);
+            if (retryAfter > 0) {
+                pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + Math.min(retryAfter, MAX_BACKOFF));
+            }
+            log.warn("MyCoRe at " + target + " is overloaded, concurrent requests are reduced to " + (int) limit);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * report a request that failed without a response
+     */
+    public void onError() {
+        lock.lock();
+        try {
+            inFlight--;
+            limit = Math.max(1, limit * OVERLOAD_DECREASE);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * give back a request slot without any information about the state of the server
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * exponential backoff with jitter, the delay is chosen randomly between half and the full exponential value
+     *
+     * @param attempt number of the failed attempt, starting with 1
+     * @param base delay in milliseconds for the first retry
+     * @return delay in milliseconds
+     */
+    public static long getBackoff(int attempt, long base) {
+        long max = Math.min(MAX_BACKOFF, base << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(max / 2, max + 1);
+    }
+
+    /**
+     * read the Retry-After header, either as seconds or as HTTP date
+     *
+     * @param headers
+     * @return delay in milliseconds, 0 if the header is missing or invalid
+     */
+    public static long getRetryAfter(HttpHeaders headers) {
+        String value = headers.firstValue("Retry-After").orElse(null);
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        value = value.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), date).toMillis());
+            } catch (DateTimeParseException e2) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,732 @@
+package de.intranda.goobi.plugins;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Client for the MyCoRe REST API that sends request bodies directly from the file system. The bodies are streamed
+ * with a small buffer, so the memory usage does not depend on the size of the uploaded files. All requests pass the
+ * shared MycoreRequestController of the server and are repeated with backoff if the server is overloaded; requests
+ * that may be repeated safely are also retried after network errors. The request rate and the upload rate follow the
+ * shared BandwidthLimiter of the server. Uploads can be gzip compressed while they are sent.
+ */
+@Log4j2
+public class MycoreRestClient {
+
+    // the writer of a streamed body runs at most PIPE_SIZE ahead of the request
+    private static final int PIPE_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    // HTTP clients shared by all plugin instances with the same connection settings
+    private static final Map<String, HttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    // servers that rejected a compressed upload or stored it without decoding, they get uncompressed uploads only
+    private static final Set<String> UNCOMPRESSED = ConcurrentHashMap.newKeySet();
+    // servers whose first compressed upload was stored decoded
+    private static final Set<String> DECODING = ConcurrentHashMap.newKeySet();
+
+    /**
+     * producer of a request body that is written while the request is sent
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
+    /**
+     * permission that each attempt of a request needs, e.g. a slot of the IngestScheduler. It is held only while the
+     * request is sent and released while the client waits before a retry, so that other uploads can use it.
+     */
+    @FunctionalInterface
+    public interface Permit {
+        Closeable acquire() throws IOException;
+    }
+
+    private final HttpClient client;
+    private final String authorization;
+    private final MycoreRequestController controller;
+    private final BandwidthLimiter limiter;
+    private final MycoreClientSettings settings;
+    private final int retries;
+    private final long backoff;
+
+    /**
+     * create a new client using basic authentication
+     *
+     * @param login
+     * @param password
+     * @param controller controller for the concurrent requests to the server
+     * @param limiter limits of the request and upload rate to the server
+     * @param settings connection settings, timeouts and retries
+     */
+    public MycoreRestClient(String login, String password, MycoreRequestController controller,
+            BandwidthLimiter limiter, MycoreClientSettings settings) {
+        client = CLIENTS.computeIfAbsent(settings.getConnectionKey(), k -> createClient(settings));
+        authorization = "Basic "
+                + Base64.getEncoder().encodeToString((login + ":" + password).getBytes(StandardCharsets.UTF_8));
+        this.controller = controller;
+        this.limiter = limiter;
+        this.settings = settings;
+        this.retries = Math.max(0, settings.getRetries());
+        this.backoff = Math.max(1, settings.getBackoff());
+    }
+
+    /**
+     * create a HTTP client. The client keeps its connections open between the requests; the number of connections
+     * follows the number of concurrent requests that the MycoreRequestController allows.
+     *
+     * @param settings
+     * @return
+     */
+    private static HttpClient createClient(MycoreClientSettings settings) {
+        return HttpClient.newBuilder()
+                .version(settings.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(Math.max(1, settings.getConnectTimeout())))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * upload a file with a PUT request, the content is read from disk while it is sent
+     *
+     * @param url
+     * @param file
+     * @param mimetype
+     * @return
+     * @throws IOException
+     */
+    public HttpResponse<String> put(String url, Path file, String mimetype) throws IOException {
+        return put(url, file, mimetype, null);
+    }
+
+    /**
+     * upload a file with a PUT request and update the given digest with all bytes that are sent. The digest is reset
+     * for each attempt and only contains the complete file content if the request was successful.
+     *
+     * @param url
+     * @param file
+     * @param mimetype
+     * @param digest digest to update while reading the file, can be null
+     * @return
+     * @throws IOException
+     */
+    public HttpResponse<String> put(String url, Path file, String mimetype, MessageDigest digest) throws IOException {
+        return put(url, file, mimetype, digest, false);
+    }
+
+    /**
+     * upload a file with a PUT request, optionally with gzip content encoding. The digest is always calculated from the
+     * uncompressed content, so it can be compared with the checksum that MyCoRe reports for the stored file. The first
+     * compressed upload to a server is checked with a HEAD request, because a server may accept the content encoding
+     * but store the compressed bytes. If the server rejects the compressed upload with 415 or did not decode it, the
+     * file is sent again uncompressed and further uploads to this server are not compressed anymore.
+     *
+     * @param url
+     * @param file
+     * @param mimetype
+     * @param digest digest to update while reading the file, can be null
+     * @param compress send the content gzip compressed
+     * @return
+     * @throws IOException
+     */
+    public HttpResponse<String> put(String url, Path file, String mimetype, MessageDigest digest, boolean compress)
+            throws IOException {
+        return put(url, file, mimetype, digest, compress, null);
+    }
+
+    /**
+     * upload a file with a PUT request, optionally compressed, where each attempt needs a permit
+     *
+     * @param url
+     * @param file
+     * @param mimetype
+     * @param digest digest to update while reading the file, can be null
+     * @param compress send the content gzip compressed
+     * @param permit permission that is acquired for each attempt, can be null
+     * @return
+     * @throws IOException
+     */
+    public HttpResponse<String> put(String url, Path file, String mimetype, MessageDigest digest, boolean compress,
+            Permit permit) throws IOException {
+        URI uri = URI.create(url);
+        String target = uri.getScheme() + "://" + uri.getAuthority();
+        if (compress && !UNCOMPRESSED.contains(target)) {
+            HttpResponse<String> response = putCompressed(uri, file, mimetype, digest, permit);
+            if (response.statusCode() == 415) {
+                if (UNCOMPRESSED.add(target)) {
+                    log.warn("MyCoRe at " + target + " does not accept compressed uploads, files are sent uncompressed");
+                }
+            } else if (response.statusCode() < 200 || response.statusCode() >= 300 || DECODING.contains(target)) {
+                return response;
+            } else if (isStoredDecoded(url, file)) {
+                DECODING.add(target);
+                return response;
+            } else if (UNCOMPRESSED.add(target)) {
+                log.warn("MyCoRe at " + target + " does not decode compressed uploads, files are sent uncompressed");
+            }
+        }
+        HttpRequest.BodyPublisher body;
+        if (digest == null && !limiter.hasByteLimits()) {
+            body = BodyPublishers.ofFile(file);
+        } else {
+            body = BodyPublishers.fromPublisher(BodyPublishers.ofInputStream(() -> {
+                if (digest != null) {
+                    digest.reset();
+                }
+                try {
+                    InputStream in = Files.newInputStream(file);
+                    return limiter.limit(digest != null ? new DigestInputStream(in, digest) : in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }), Files.size(file));
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", mimetype)
+                .header("Authorization", authorization)
+                .timeout(getUploadTimeout(Files.size(file)))
+                .PUT(body)
+                .build();
+        return send(request, BodyHandlers.ofString(), Files.size(file), true, permit);
+    }
+
+    private HttpResponse<String> putCompressed(URI uri, Path file, String mimetype, MessageDigest digest,
+            Permit permit) throws IOException {
+        // the length of the compressed content is not known in advance, so it is sent chunked
+        HttpRequest.BodyPublisher body = BodyPublishers.ofInputStream(() -> {
+            if (digest != null) {
+                digest.reset();
+            }
+            try {
+                InputStream in = Files.newInputStream(file);
+                // the fastest level already reduces XML to a fraction and keeps up with the network
+                return limiter.limit(new GzipCompressingInputStream(
+                        digest != null ? new DigestInputStream(in, digest) : in, Deflater.BEST_SPEED));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        // the timeout follows the size of the file, an upper bound for the compressed XML
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", mimetype)
+                .header("Content-Encoding", "gzip")
+                .header("Authorization", authorization)
+                .timeout(getUploadTimeout(Files.size(file)))
+                .PUT(body)
+                .build();
+        return send(request, BodyHandlers.ofString(), Files.size(file), true, permit);
+    }
+
+    /**
+     * check if a compressed upload was stored with its uncompressed content, by its size or else by its checksum
+     *
+     * @param url
+     * @param file
+     * @return false if the stored file differs or if it could not be checked
+     * @throws IOException
+     */
+    private boolean isStoredDecoded(String url, Path file) throws IOException {
+        HttpResponse<String> response = head(url);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            return false;
+        }
+        OptionalLong size = response.headers().firstValueAsLong("Content-Length");
+        if (size.isPresent()) {
+            return size.getAsLong() == Files.size(file);
+        }
+        String md5 = DerivativeListing.getChecksum(response.headers());
+        if (md5 == null) {
+            md5 = DerivativeListing.getETagChecksum(response.headers());
+        }
+        return md5 != null && md5.equals(ChecksumService.md5Hex(file));
+    }
+
+    /**
+     * get the timeout of an upload. While the bandwidth limit is active, the upload can not be faster than its share
+     * of the limited rate, which is divided between the concurrent requests to the server.
+     *
+     * @param bytes size of the upload
+     * @return
+     */
+    Duration getUploadTimeout(long bytes) {
+        Duration timeout = settings.getTimeout(bytes);
+        long rate = limiter.getBytesPerSecond();
+        if (rate > 0) {
+            long share = Math.max(1, rate / Math.max(1, controller.getLimit()));
+            Duration limited = Duration.ofSeconds(Math.max(1, settings.getRequestTimeout()) + bytes / share);
+            if (limited.compareTo(timeout) > 0) {
+                timeout = limited;
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * request a resource
+     *
+     * @param url
+     * @param accept
+     * @return
+     * @throws IOException
+     */
+    public HttpResponse<String> get(String url, String accept) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Accept", accept)
+                .header("Authorization", authorization)
+                .timeout(settings.getTimeout(0))
+                .GET()
+                .build();
+        return send(request, BodyHandlers.ofString(), 0, true, null);
+    }
+
+    /**
+     * request a resource and read the body while it is received
+     *
+     * @param url
+     * @param accept
+     * @return response whose body has to be closed by the caller
+     * @throws IOException
+     */
+    public HttpResponse<InputStream> getStream(String url, String accept) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Accept", accept)
+                .header("Authorization", authorization)
+                .timeout(settings.getTimeout(0))
+                .GET()
+                .build();
+        return send(request, BodyHandlers.ofInputStream(), 0, true, null);
+    }
+
+    /**
+     * request only the headers of a resource
+     *
+     * @param url
+     * @return
+     * @throws IOException
+     */
+    public HttpResponse<String> head(String url) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", authorization)
+                .timeout(settings.getTimeout(0))
+                .method("HEAD", BodyPublishers.noBody())
+                .build();
+        return send(request, BodyHandlers.ofString(), 0, true, null);
+    }
+
+    /**
+     * delete a resource
+     *
+     * @param url
+     * @return
+     * @throws IOException
+     */
+    public HttpResponse<String> delete(String url) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", authorization)
+                .timeout(settings.getTimeout(0))
+                .DELETE()
+                .build();
+        return send(request, BodyHandlers.ofString(), 0, true, null);
+    }
+
+    /**
+     * send a POST request, it is only repeated if the server rejected it because of overload
+     *
+     * @param url
+     * @param contentType
+     * @param content
+     * @return
+     * @throws IOException
+     */
+    public HttpResponse<String> post(String url, String contentType, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", contentType)
+                .header("Accept", "application/xml")
+                .header("Authorization", authorization)
+                .timeout(settings.getTimeout(bytes.length))
+                .POST(BodyPublishers.ofByteArray(bytes))
+                .build();
+        return send(request, BodyHandlers.ofString(), bytes.length, false, null);
+    }
+
+    /**
+     * send a POST request with a body that is generated while it is sent. The writer runs in its own thread and is
+     * connected to the request through a pipe, so the body is never held in memory completely.
+     *
+     * @param url
+     * @param contentType
+     * @param expectedBytes expected size of the body, the timeout of the request grows with it
+     * @param writer
+     * @return
+     * @throws IOException if the request failed, if the writer failed the cause is the exception of the writer
+     */
+    public HttpResponse<String> post(String url, String contentType, long expectedBytes, BodyWriter writer)
+            throws IOException {
+        PipedBody body = new PipedBody(writer);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", contentType)
+                .header("Accept", "application/xml")
+                .header("Authorization", authorization)
+                .timeout(settings.getTimeout(expectedBytes))
+                .POST(BodyPublishers.ofInputStream(body::open))
+                .build();
+        try {
+            HttpResponse<String> response = send(request, BodyHandlers.ofString(), -1, false, null);
+            body.checkFailure();
+            return response;
+        } catch (IOException e) {
+            body.checkFailure();
+            throw e;
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * send a request and wait for the response. Requests rejected with 429 or 503 are repeated after the time the
+     * server asked for or an exponential backoff, idempotent requests are also repeated after network errors and 502 or
+     * 504 responses.
+     *
+     * @param request
+     * @param handler
+     * @param bytes size of the request body, -1 if unknown
+     * @param idempotent true if the request may be sent again after an error
+     * @param permit permission that is acquired for each attempt, can be null
+     * @return the response, after the last retry also an unsuccessful one
+     * @throws IOException
+     */
+    private <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler, long bytes, boolean idempotent,
+            Permit permit) throws IOException {
+        int attempt = 0;
+        long delay = 0;
+        while (true) {
+            if (delay > 0) {
+                pause(request, delay);
+            }
+            attempt++;
+            // the permit is held during the attempt only, not while waiting for the retry
+            try (Closeable granted = permit != null ? permit.acquire() : null) {
+                limiter.acquireRequest();
+                controller.acquire();
+                long start = System.nanoTime();
+                HttpResponse<T> response;
+                try {
+                    response = client.send(request, handler);
+                } catch (IOException e) {
+                    controller.onError();
+                    if (!idempotent || attempt > retries) {
+                        throw e;
+                    }
+                    delay = MycoreRequestController.getBackoff(attempt, backoff);
+                    IngestMetrics.getInstance().retry();
+                    log.warn("Request to " + request.uri() + " failed (" + attempt + "), retry in " + delay + " ms", e);
+                    continue;
+                } catch (InterruptedException e) {
+                    controller.release();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted during request to " + request.uri());
+                }
+
+                int status = response.statusCode();
+                IngestMetrics.getInstance().response(status);
+                boolean overload = status == 429 || status == 503;
+                if (!overload && !(idempotent && (status == 502 || status == 504))) {
+                    controller.onSuccess(System.nanoTime() - start, bytes);
+                    return response;
+                }
+                long retryAfter = MycoreRequestController.getRetryAfter(response.headers());
+                if (overload) {
+                    controller.onOverload(retryAfter);
+                } else {
+                    controller.onError();
+                }
+                if (attempt > retries) {
+                    return response;
+                }
+                if (response.body() instanceof InputStream) {
+                    ((InputStream) response.body()).close();
+                }
+                delay = Math.max(retryAfter, MycoreRequestController.getBackoff(attempt, backoff));
+                IngestMetrics.getInstance().retry();
+                log.warn("MyCoRe answered " + status + " for " + request.uri() + " (" + attempt + "), retry in "
+                        + delay + " ms");
+            }
+        }
+    }
+
+    private static void pause(HttpRequest request, long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to repeat the request to " + request.uri());
+        }
+    }
+
+    /**
+     * request body that is written by a BodyWriter into a pipe. Each time the HTTP client opens the body, a new pipe
+     * with a new writer thread is created after the writer of the previous attempt has stopped.
+     */
+    private static class PipedBody {
+        private final BodyWriter writer;
+        private final List<Pipe> pipes = new CopyOnWriteArrayList<>();
+        private volatile Exception failure;
+        private Thread producer;
+
+        private PipedBody(BodyWriter writer) {
+            this.writer = writer;
+        }
+
+        private synchronized InputStream open() {
+            try {
+                // the writer is not used by two threads at the same time, a repeated request starts from scratch
+                close();
+                if (producer != null) {
+                    producer.join();
+                }
+                failure = null;
+
+                Pipe pipe = new Pipe();
+                producer = new Thread(() -> {
+                    try (OutputStream out = pipe.output()) {
+                        writer.write(out);
+                    } catch (Exception e) {
+                        failure = e;
+                    } finally {
+                        pipe.finish();
+                    }
+                }, "mycore-request-body");
+                producer.setDaemon(true);
+                pipes.add(pipe);
+                producer.start();
+
+                // report a failure of the writer instead of a regular end of the body
+                return new FilterInputStream(pipe.input()) {
+                    @Override
+                    public int read() throws IOException {
+                        return check(super.read());
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        return check(super.read(b, off, len));
+                    }
+
+                    private int check(int n) throws IOException {
+                        if (n == -1 && failure != null) {
+                            throw new IOException("Error while writing the request body", failure);
+                        }
+                        return n;
+                    }
+                };
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Interrupted while opening the request body"));
+            }
+        }
+
+        /**
+         * throw the error of the writer if there was any
+         *
+         * @throws IOException
+         */
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Error while writing the request body: " + failure.getMessage(), failure);
+            }
+        }
+
+        /**
+         * close all pipes, this stops writers that are still blocked because the body was not read completely
+         */
+        private void close() {
+            for (Pipe pipe : pipes) {
+                pipe.close();
+            }
+        }
+    }
+
+    /**
+     * bounded handoff of a body from the writer thread to the HTTP client in chunks. Unlike PipedInputStream it does
+     * not watch the threads on both ends, the HTTP client may read the body from any thread of its executor.
+     */
+    private static class Pipe {
+        private static final byte[] END = new byte[0];
+        private static final long POLL_MILLIS = 100;
+
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(PIPE_SIZE / CHUNK_SIZE);
+        private volatile boolean closed;
+
+        /**
+         * stream for the writer, the data is passed on in chunks of CHUNK_SIZE
+         *
+         * @return
+         */
+        private OutputStream output() {
+            return new OutputStream() {
+                private byte[] buffer = new byte[CHUNK_SIZE];
+                private int count;
+
+                @Override
+                public void write(int b) throws IOException {
+                    if (count == buffer.length) {
+                        flush();
+                    }
+                    buffer[count++] = (byte) b;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    while (len > 0) {
+                        if (count == buffer.length) {
+                            flush();
+                        }
+                        int n = Math.min(len, buffer.length - count);
+                        System.arraycopy(b, off, buffer, count, n);
+                        count += n;
+                        off += n;
+                        len -= n;
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (count > 0) {
+                        put(count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+                        buffer = new byte[CHUNK_SIZE];
+                        count = 0;
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+
+        /**
+         * stream for the HTTP client, it ends after the writer has finished
+         *
+         * @return
+         */
+        private InputStream input() {
+            return new InputStream() {
+                private byte[] chunk;
+                private int pos;
+
+                @Override
+                public int read() throws IOException {
+                    return next() ? chunk[pos++] & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (!next()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, chunk.length - pos);
+                    System.arraycopy(chunk, pos, b, off, n);
+                    pos += n;
+                    return n;
+                }
+
+                private boolean next() throws IOException {
+                    while (chunk != END && (chunk == null || pos == chunk.length)) {
+                        chunk = take();
+                        pos = 0;
+                    }
+                    return chunk != END;
+                }
+
+                @Override
+                public void close() {
+                    Pipe.this.close();
+                }
+            };
+        }
+
+        private void put(byte[] chunk) throws IOException {
+            try {
+                while (!chunks.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        throw new IOException("Request body was closed before it was read completely");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing the request body");
+            }
+        }
+
+        private byte[] take() throws IOException {
+            try {
+                byte[] chunk;
+                while ((chunk = chunks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    if (closed) {
+                        throw new IOException("Request body was closed");
+                    }
+                }
+                return chunk;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading the request body");
+            }
+        }
+
+        /**
+         * mark the end of the body after the writer has finished
+         */
+        private void finish() {
+            try {
+                put(END);
+            } catch (IOException e) {
+                // reader is already closed
+            }
+        }
+
+        /**
+         * stop the writer, the chunks that were not read yet are dropped
+         */
+        private void close() {
+            closed = true;
+            chunks.clear();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package de.intranda.goobi.plugins;
+
+import de.sub.goobi.helper.enums.PropertyType;
+import de.sub.goobi.persistence.managers.PropertyManager;
+import lombok.extern.log4j.Log4j2;
+import org.goobi.beans.GoobiProperty;
+import org.goobi.beans.GoobiProperty.PropertyOwnerType;
+import org.goobi.beans.Process;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Collects the process properties of a container and stores them together at the end of a run. Properties that exist
+ * already are updated instead of adding a new property on each run, properties whose value did not change are not
+ * written at all.
+ */
+@Log4j2
+public class PropertyBatch {
+
+    private final String container;
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    /**
+     * create a new batch for the properties of a container
+     *
+     * @param container
+     */
+    public PropertyBatch(String container) {
+        this.container = container;
+    }
+
+    /**
+     * set the value of a property, it is stored with the next call of save
+     *
+     * @param name
+     * @param value
+     */
+    public void put(String name, String value) {
+        values.put(name, value);
+    }
+
+    /**
+     * store all collected properties of the process
+     *
+     * @param process
+     * @return number of properties that were written
+     */
+    public int save(Process process) {
+        // existing properties of this container, the first one of each name is updated
+        Map<String, GoobiProperty> existing = new HashMap<>();
+        for (GoobiProperty prop : process.getEigenschaften()) {
+            if (container.equals(prop.getContainer())) {
+                existing.putIfAbsent(prop.getPropertyName(), prop);
+            }
+        }
+
+        int written = 0;
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            GoobiProperty prop = existing.get(e.getKey());
+            if (prop == null) {
+                prop = new GoobiProperty(PropertyOwnerType.PROCESS);
+                prop.setOwner(process);
+                prop.setPropertyName(e.getKey());
+                prop.setType(PropertyType.getByName("String"));
+                prop.setContainer(container);
+                process.getEigenschaften().add(prop);
+            } else if (Objects.equals(prop.getPropertyValue(), e.getValue())) {
+                continue;
+            }
+            prop.setPropertyValue(e.getValue());
+            PropertyManager.saveProperty(prop);
+            written++;
+        }
+        log.debug(written + " of " + values.size() + " properties of container " + container + " were written");
+        values.clear();
+        return written;
+    }
+}
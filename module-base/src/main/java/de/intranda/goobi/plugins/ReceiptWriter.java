@@ -0,0 +1,263 @@
+package de.intranda.goobi.plugins;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import de.intranda.goobi.plugins.model.IngestFile;
+import de.intranda.goobi.plugins.model.IngestReceipt;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the receipt of an ingest while the ingest is running. The file is created when the ingest starts, each file
+ * is appended as soon as it was verified and the status is written when the ingest is finished. If the ingest is
+ * interrupted, the receipt contains all files verified so far, but no status. A file whose state changes after it was
+ * written is appended again, the last entry of a file is its final state.
+ */
+@Log4j2
+public class ReceiptWriter {
+
+    public static final String DATE_PATTERN = "yyyy-MM-dd-HHmmssSSS";
+
+    /**
+     * mapper to write and read the receipts
+     */
+    public static final ObjectMapper MAPPER = createMapper();
+
+    private static final ObjectWriter FILE_WRITER = MAPPER.writer().withRootName("files");
+
+    private final Path file;
+    private final IngestReceipt receipt;
+    // state of each file when it was written last
+    private final Map<IngestFile, List<Object>> written = new IdentityHashMap<>();
+    private Writer out;
+    private boolean filesOpen;
+    private boolean finished;
+
+    /**
+     * create a writer for a receipt, the file is named after the begin of the ingest
+     *
+     * @param folder
+     * @param receipt
+     */
+    public ReceiptWriter(Path folder, IngestReceipt receipt) {
+        this.receipt = receipt;
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(DATE_PATTERN);
+        file = folder.resolve("ingest-receipt-" + receipt.getBeginn().format(formatter) + ".xml");
+    }
+
+    /**
+     * find the receipt of the latest successful ingest in a folder, receipts of failed or interrupted ingests are
+     * skipped
+     *
+     * @param folder
+     * @return the receipt or null if there was no successful ingest
+     * @throws IOException
+     */
+    public static IngestReceipt findLatest(Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return null;
+        }
+        List<Path> receipts = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "ingest-receipt-*.xml")) {
+            stream.forEach(receipts::add);
+        }
+        // the timestamp in the file name sorts the newest receipt first
+        receipts.sort(Comparator.comparing(Path::getFileName).reversed());
+        for (Path p : receipts) {
+            try {
+                IngestReceipt r = MAPPER.readValue(p.toFile(), IngestReceipt.class);
+                if ("FINISHED".equals(r.getStatus()) && r.getDerivative() != null) {
+                    r.setFiles(latestEntries(r.getFiles()));
+                    return r;
+                }
+            } catch (IOException e) {
+                // receipts of interrupted ingests are incomplete
+                log.warn("Receipt " + p + " is incomplete or could not be read");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * reduce the entries of the receipt to the last one of each file
+     *
+     * @param files
+     * @return
+     */
+    private static List<IngestFile> latestEntries(List<IngestFile> files) {
+        Map<String, IngestFile> latest = new LinkedHashMap<>();
+        for (IngestFile f : files) {
+            latest.put(f.getGoobiFileType() + "/" + f.getName(), f);
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * get the path of the receipt file
+     *
+     * @return
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * create the receipt file, so that an interrupted ingest leaves a receipt behind
+     */
+    public synchronized void start() {
+        try {
+            open();
+        } catch (IOException e) {
+            log.error("Error writing the receipt " + file, e);
+        }
+    }
+
+    /**
+     * append files to the receipt, files that were appended before are skipped unless their state has changed
+     *
+     * @param files
+     */
+    public synchronized void append(Iterable<IngestFile> files) {
+        if (finished) {
+            return;
+        }
+        try {
+            open();
+            for (IngestFile f : files) {
+                write(f);
+            }
+            out.flush();
+        } catch (IOException e) {
+            log.error("Error writing the receipt " + file, e);
+        }
+    }
+
+    /**
+     * write a file unless it was written before with the same state
+     *
+     * @param f
+     * @throws IOException
+     */
+    private void write(IngestFile f) throws IOException {
+        List<Object> state = Arrays.asList(f.isValid(), f.getMycoreChecksum(), f.getMycoreSize(), f.getMycoreUrl());
+        if (state.equals(written.put(f, state))) {
+            return;
+        }
+        if (!filesOpen) {
+            out.write("<files>\n");
+            filesOpen = true;
+        }
+        out.write(FILE_WRITER.writeValueAsString(f));
+        out.write("\n");
+    }
+
+    /**
+     * write the status and close the receipt. Files that changed since they were appended are written again with their
+     * final state. Only the first call has an effect.
+     *
+     * @param status
+     * @param details
+     * @return true if the receipt was finished by this call
+     */
+    public synchronized boolean finish(String status, String details) {
+        if (finished) {
+            return false;
+        }
+        finished = true;
+        receipt.setStatus(status);
+        receipt.setDetails(details);
+        receipt.setEnd(LocalDateTime.now());
+        try {
+            open();
+            for (IngestFile f : new ArrayList<>(written.keySet())) {
+                write(f);
+            }
+            if (filesOpen) {
+                out.write("</files>\n");
+            }
+            writeElement("end", receipt.getEnd());
+            writeElement("status", receipt.getStatus());
+            writeElement("details", receipt.getDetails());
+            writeElement("volume", receipt.getVolume());
+            writeElement("derivative", receipt.getDerivative());
+            writeElement("timings", receipt.getTimings());
+            out.write("</receipt>\n");
+            return true;
+        } catch (IOException e) {
+            log.error("Error writing the receipt " + file, e);
+            return false;
+        } finally {
+            close();
+        }
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.error("Error closing the receipt " + file, e);
+            }
+        }
+    }
+
+    /**
+     * create the file and write the beginning of the receipt
+     *
+     * @throws IOException
+     */
+    private void open() throws IOException {
+        if (out != null) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8));
+        out.write("<?xml version='1.0' encoding='UTF-8'?>\n<receipt>\n");
+        writeElement("beginn", receipt.getBeginn());
+        out.flush();
+    }
+
+    private void writeElement(String name, Object value) throws IOException {
+        if (value != null && !"".equals(value) && !(value instanceof Map && ((Map<?, ?>) value).isEmpty())) {
+            out.write(MAPPER.writer().withRootName(name).writeValueAsString(value));
+            out.write("\n");
+        }
+    }
+
+    private static ObjectMapper createMapper() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(DATE_PATTERN);
+        JavaTimeModule jsr310 = new JavaTimeModule();
+        jsr310.addSerializer(LocalDateTime.class, new LocalDateTimeSerializer(formatter));
+        jsr310.addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer(formatter));
+        ObjectMapper om = new XmlMapper().registerModule(jsr310)
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        om.setSerializationInclusion(Include.NON_EMPTY);
+        om.enable(SerializationFeature.INDENT_OUTPUT);
+        return om;
+    }
+}
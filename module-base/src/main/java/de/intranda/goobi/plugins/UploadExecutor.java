@@ -0,0 +1,120 @@
+package de.intranda.goobi.plugins;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor for concurrent uploads into MyCoRe. Uploads can run on platform threads of a fixed pool or on
+ * virtual threads; in both cases not more than the configured number of uploads are running at the same time.
+ */
+@Log4j2
+public class UploadExecutor implements AutoCloseable {
+
+    /**
+     * a single upload that may fail with an IOException
+     */
+    @FunctionalInterface
+    public interface UploadTask {
+        void upload() throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final List<Future<Void>> pending = new ArrayList<>();
+
+    /**
+     * create a new executor
+     *
+     * @param threads maximum number of concurrent uploads
+     * @param virtualThreads use virtual threads instead of a fixed pool of platform threads
+     */
+    public UploadExecutor(int threads, boolean virtualThreads) {
+        int size = Math.max(1, threads);
+        permits = new Semaphore(size);
+        if (virtualThreads) {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            executor = Executors.newFixedThreadPool(size, new UploadThreadFactory());
+        }
+    }
+
+    /**
+     * schedule an upload, the method returns immediately
+     *
+     * @param task
+     */
+    public synchronized void submit(UploadTask task) {
+        pending.add(executor.submit(() -> {
+            permits.acquire();
+            try {
+                task.upload();
+            } finally {
+                permits.release();
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * wait until all scheduled uploads are finished
+     *
+     * @throws IOException the first error that occurred during one of the uploads
+     */
+    public void awaitAll() throws IOException {
+        List<Future<Void>> futures;
+        synchronized (this) {
+            futures = new ArrayList<>(pending);
+            pending.clear();
+        }
+        IOException error = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new InterruptedIOException("Interrupted while waiting for uploads to MyCoRe");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (error == null) {
+                    error = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                } else {
+                    log.error("Further error during upload to MyCoRe", cause);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * thread factory to give the upload threads a meaningful name
+     */
+    private static class UploadThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "mycore-upload-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
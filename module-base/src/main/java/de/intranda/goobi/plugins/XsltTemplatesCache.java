@@ -0,0 +1,116 @@
+package de.intranda.goobi.plugins;
+
+import lombok.extern.log4j.Log4j2;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JVM-wide cache of compiled XSLT stylesheets, keyed by the URL of the stylesheet. After the configured time to live
+ * a stylesheet is revalidated with a conditional request using ETag and Last-Modified, it is only fetched and compiled
+ * again if it was changed. The cached Templates are thread safe, each run creates its own cheap Transformer. If a
+ * changed stylesheet can not be fetched or compiled, the previous version is used further on.
+ */
+@Log4j2
+public class XsltTemplatesCache {
+
+    private static final Map<String, CachedTemplates> CACHE = new ConcurrentHashMap<>();
+
+    private XsltTemplatesCache() {
+    }
+
+    /**
+     * get the compiled stylesheet for a URL
+     *
+     * @param url URL of the stylesheet
+     * @param ttl time in milliseconds a cached stylesheet is used without revalidation
+     * @return
+     * @throws IOException
+     * @throws TransformerException
+     */
+    public static Templates getTemplates(String url, long ttl) throws IOException, TransformerException {
+        CachedTemplates entry = CACHE.computeIfAbsent(url, CachedTemplates::new);
+        synchronized (entry) {
+            if (entry.templates == null || System.currentTimeMillis() - entry.validated >= ttl) {
+                try {
+                    entry.revalidate();
+                } catch (IOException | TransformerException e) {
+                    if (entry.templates == null) {
+                        throw e;
+                    }
+                    // a broken or unreachable stylesheet is checked again after the time to live
+                    entry.validated = System.currentTimeMillis();
+                    log.warn("XSLT file " + url + " could not be revalidated, the cached version is used", e);
+                }
+            }
+            return entry.templates;
+        }
+    }
+
+    private static class CachedTemplates {
+        private final String url;
+        private Templates templates;
+        private String etag;
+        private long lastModified;
+        private long validated;
+
+        private CachedTemplates(String url) {
+            this.url = url;
+        }
+
+        /**
+         * check if the stylesheet was changed and compile it again if needed
+         *
+         * @throws IOException
+         * @throws TransformerException
+         */
+        private void revalidate() throws IOException, TransformerException {
+            URLConnection connection = new URL(url).openConnection();
+            if (templates != null) {
+                if (etag != null) {
+                    connection.setRequestProperty("If-None-Match", etag);
+                }
+                if (lastModified > 0) {
+                    connection.setIfModifiedSince(lastModified);
+                }
+            }
+            connection.connect();
+
+            boolean unchanged;
+            if (connection instanceof HttpURLConnection) {
+                int status = ((HttpURLConnection) connection).getResponseCode();
+                if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    ((HttpURLConnection) connection).disconnect();
+                    throw new IOException("Response for XSLT file " + url + " was not successful: " + status);
+                }
+                unchanged = templates != null && status == HttpURLConnection.HTTP_NOT_MODIFIED;
+            } else {
+                // no conditional requests for other protocols, compare the modification date instead
+                unchanged = templates != null && lastModified > 0 && connection.getLastModified() == lastModified;
+            }
+
+            if (unchanged) {
+                connection.getInputStream().close();
+                log.debug("XSLT file " + url + " is unchanged, the compiled version is used");
+            } else {
+                try (InputStream in = connection.getInputStream()) {
+                    TransformerFactory factory = TransformerFactory.newInstance();
+                    templates = factory.newTemplates(new StreamSource(in, url));
+                }
+                etag = connection.getHeaderField("ETag");
+                lastModified = connection.getLastModified();
+                log.info("XSLT file " + url + " was compiled");
+            }
+            validated = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package de.intranda.goobi.plugins.model;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class ChecksumEntry {
+
+	@JacksonXmlProperty(isAttribute = true)
+	private String path;
+
+	@JacksonXmlProperty(isAttribute = true)
+	private long size;
+
+	@JacksonXmlProperty(isAttribute = true)
+	private long modified;
+
+	@JacksonXmlProperty(isAttribute = true)
+	private String md5;
+
+}
@@ -0,0 +1,21 @@
+package de.intranda.goobi.plugins.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+@JacksonXmlRootElement(localName = "checksums")
+public class ChecksumList {
+
+    @JacksonXmlElementWrapper(useWrapping = false)
+    @JacksonXmlProperty(localName = "file")
+    private List<ChecksumEntry> files = new ArrayList<>();
+
+}
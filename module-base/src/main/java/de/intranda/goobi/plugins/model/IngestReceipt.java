@@ -3,6 +3,7 @@ package de.intranda.goobi.plugins.model;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
@@ -24,6 +25,9 @@ public class IngestReceipt {
     private String details = "";
     private String volume;
     private String derivative;
+
+    // time in milliseconds spent in each phase of the ingest
+    private Map<String, Long> timings;
     
     private List<IngestFile> files = new ArrayList<>();
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package de.intranda.goobi.plugins.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@JacksonXmlRootElement(localName = "state")
+public class IngestState {
+
+	private String volume;
+	private String derivative;
+
+	@JacksonXmlElementWrapper(localName = "files")
+	@JacksonXmlProperty(localName = "file")
+	private List<IngestFile> files = new ArrayList<>();
+}
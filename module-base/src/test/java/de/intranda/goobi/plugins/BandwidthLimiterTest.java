@@ -0,0 +1,82 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BandwidthLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testTokenBucket() {
+        BandwidthLimiter.TokenBucket bucket = new BandwidthLimiter.TokenBucket();
+        // the bucket starts full with the tokens of one second
+        assertEquals(0, bucket.reserve(1000, 1000, 0));
+        // further tokens have to be waited for
+        assertEquals(SECOND / 2, bucket.reserve(500, 1000, 0));
+        // the debt is paid after half a second, then the bucket fills again
+        assertEquals(0, bucket.reserve(250, 1000, SECOND));
+        assertEquals(SECOND / 4, bucket.reserve(500, 1000, SECOND));
+    }
+
+    @Test
+    public void testTokenBucketRateChange() {
+        BandwidthLimiter.TokenBucket bucket = new BandwidthLimiter.TokenBucket();
+        assertEquals(0, bucket.reserve(0, 1000, 0));
+        // the bucket shrinks to the new rate
+        assertEquals(SECOND, bucket.reserve(200, 100, 0));
+    }
+
+    @Test
+    public void testProfiles() {
+        BandwidthLimiter limiter = BandwidthLimiter.getInstance("http://profiles.example.org/api/v2/");
+        BandwidthProfile day = new BandwidthProfile(LocalTime.of(7, 0), LocalTime.of(19, 0), 1024, 0);
+        BandwidthProfile night = new BandwidthProfile(LocalTime.of(22, 0), LocalTime.of(2, 0), 0, 5);
+        limiter.setProfiles(Arrays.asList(day, night));
+
+        assertTrue(limiter.hasByteLimits());
+        assertEquals(day, limiter.getProfile(LocalTime.of(7, 0)));
+        assertEquals(day, limiter.getProfile(LocalTime.of(18, 59)));
+        assertNull(limiter.getProfile(LocalTime.of(19, 0)));
+        assertEquals(night, limiter.getProfile(LocalTime.of(23, 30)));
+        assertEquals(night, limiter.getProfile(LocalTime.of(1, 0)));
+        assertNull(limiter.getProfile(LocalTime.of(3, 0)));
+
+        // the latest configuration wins
+        limiter.setProfiles(Collections.singletonList(night));
+        assertFalse(limiter.hasByteLimits());
+        assertNull(limiter.getProfile(LocalTime.of(12, 0)));
+    }
+
+    @Test
+    public void testActiveRate() {
+        BandwidthLimiter limiter = BandwidthLimiter.getInstance("http://rate.example.org/api/v2/");
+        LocalTime now = LocalTime.now();
+        // a profile that is not active now does not limit the current uploads
+        limiter.setProfiles(Collections.singletonList(
+                new BandwidthProfile(now.plusHours(1), now.plusHours(2), 1024, 0)));
+        assertTrue(limiter.hasByteLimits());
+        assertEquals(0, limiter.getBytesPerSecond());
+
+        limiter.setProfiles(Collections.singletonList(
+                new BandwidthProfile(LocalTime.MIDNIGHT, LocalTime.MIDNIGHT, 1024, 0)));
+        assertEquals(1024, limiter.getBytesPerSecond());
+    }
+
+    @Test
+    public void testSharedInstance() {
+        assertTrue(BandwidthLimiter.getInstance("https://example.org/api/v2/")
+                == BandwidthLimiter.getInstance("https://example.org/other/"));
+        assertFalse(BandwidthLimiter.getInstance("https://example.org/api/v2/")
+                == BandwidthLimiter.getInstance("https://example.org:8443/api/v2/"));
+    }
+}
@@ -0,0 +1,52 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChecksumCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCachedChecksumIsReused() throws Exception {
+        Path journal = folder.newFolder("journal").toPath();
+        Path file = folder.newFile("00000001.tif").toPath();
+        Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+
+        ChecksumCache cache = ChecksumCache.load(journal);
+        String md5 = ChecksumService.md5Hex(file, cache);
+        assertEquals(ChecksumService.md5Hex(file), md5);
+        cache.save();
+
+        ChecksumCache reloaded = ChecksumCache.load(journal);
+        assertEquals(md5, reloaded.get(file, Files.readAttributes(file, BasicFileAttributes.class)));
+    }
+
+    @Test
+    public void testChangedFileIsInvalidated() throws Exception {
+        Path journal = folder.newFolder("journal").toPath();
+        Path file = folder.newFile("00000001.xml").toPath();
+        Files.write(file, "first".getBytes(StandardCharsets.UTF_8));
+
+        ChecksumCache cache = ChecksumCache.load(journal);
+        ChecksumService.md5Hex(file, cache);
+        cache.save();
+
+        Files.write(file, "second version".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        ChecksumCache reloaded = ChecksumCache.load(journal);
+        assertNull(reloaded.get(file, Files.readAttributes(file, BasicFileAttributes.class)));
+        assertEquals(ChecksumService.md5Hex(file), ChecksumService.md5Hex(file, reloaded));
+    }
+}
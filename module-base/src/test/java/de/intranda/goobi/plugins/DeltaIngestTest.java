@@ -0,0 +1,119 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.model.IngestFile;
+
+public class DeltaIngestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MycoreStandInServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MycoreStandInServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testDeltaWithChangedRemovedAndAddedFiles() throws Exception {
+        String derivative = server.createDerivative();
+
+        // previous ingest
+        IngestFileRegistry previous = new IngestFileRegistry();
+        previous.add(createFile("00000001.tif", "image 1"));
+        previous.add(createFile("00000002.tif", "image 2"));
+        previous.add(createFile("00000003.tif", "image 3"));
+        for (IngestFile f : previous) {
+            server.upload(derivative, "/contents/", Path.of(f.getGoobiFilePath()));
+        }
+        server.verify(derivative, "/contents/", previous);
+
+        // the second image was changed, the third removed and a fourth added
+        IngestFileRegistry current = new IngestFileRegistry();
+        IngestFile unchanged = createFile("00000001.tif", "image 1");
+        IngestFile changed = createFile("00000002.tif", "image 2 changed");
+        IngestFile added = createFile("00000004.tif", "image 4");
+        current.add(unchanged);
+        current.add(changed);
+        current.add(added);
+
+        assertTrue(DeltaIngest.takeOver(unchanged, previous));
+        assertTrue(unchanged.isValid());
+        assertEquals(derivative + "/contents/00000001.tif", unchanged.getMycoreUrl());
+        assertEquals(unchanged.getGoobiChecksum(), unchanged.getMycoreChecksum());
+        assertFalse(DeltaIngest.takeOver(changed, previous));
+        assertFalse(changed.isValid());
+        assertFalse(DeltaIngest.takeOver(added, previous));
+        assertNull(added.getMycoreUrl());
+
+        DeltaIngest.deleteRemovedFiles(server.getClient(), previous, current);
+        Map<String, MycoreStandInServer.StoredFile> files = server.getFiles(derivative);
+        assertEquals(2, files.size());
+        assertFalse(files.containsKey("/00000003.tif"));
+
+        long puts = server.getRequests().get("PUT");
+        server.upload(derivative, "/contents/", Path.of(changed.getGoobiFilePath()));
+        server.upload(derivative, "/contents/", Path.of(added.getGoobiFilePath()));
+        server.verify(derivative, "/contents/", current);
+        for (IngestFile f : current) {
+            assertTrue(f.getName(), f.isValid());
+        }
+        // the unchanged file was not uploaded again
+        assertEquals(puts + 2, (long) server.getRequests().get("PUT"));
+        assertEquals(changed.getGoobiChecksum(), server.getFiles(derivative).get("/00000002.tif").getMd5());
+    }
+
+    @Test
+    public void testInvalidFileIsNotTakenOver() throws Exception {
+        IngestFileRegistry previous = new IngestFileRegistry();
+        IngestFile old = createFile("00000001.tif", "image");
+        old.setValid(false);
+        previous.add(old);
+        assertFalse(DeltaIngest.takeOver(createFile("00000001.tif", "image"), previous));
+    }
+
+    @Test
+    public void testAlreadyDeletedFileIsIgnored() throws Exception {
+        String derivative = server.createDerivative();
+        IngestFileRegistry previous = new IngestFileRegistry();
+        IngestFile old = createFile("00000001.tif", "image");
+        old.setMycoreUrl(derivative + "/contents/00000001.tif");
+        previous.add(old);
+        // MyCoRe answers 404 for the missing file
+        DeltaIngest.deleteRemovedFiles(server.getClient(), previous, new IngestFileRegistry());
+        assertEquals(1, (long) server.getRequests().get("DELETE"));
+    }
+
+    private IngestFile createFile(String name, String content) throws Exception {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        IngestFile f = new IngestFile();
+        f.setName(name);
+        f.setGoobiFileType("media");
+        f.setGoobiFilePath(file.toString());
+        f.setGoobiSize(Files.size(file));
+        f.setGoobiChecksum(ChecksumService.md5Hex(file));
+        return f;
+    }
+}
@@ -0,0 +1,38 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DerivativeListingTest {
+
+    private static final String MD5 = "9a0364b9e99bb480dd25e1f0284c8555";
+
+    @Test
+    public void testChecksumFromEtag() {
+        assertEquals(MD5, DerivativeListing.getETagChecksum(headers("ETag", "\"" + MD5 + "\"")));
+        assertEquals(MD5, DerivativeListing.getETagChecksum(headers("ETag", "W/\"" + MD5.toUpperCase() + "\"")));
+        // an ETag is never taken as a reliable checksum
+        assertNull(DerivativeListing.getChecksum(headers("ETag", "\"" + MD5 + "\"")));
+    }
+
+    @Test
+    public void testChecksumFromContentMd5() {
+        assertEquals(MD5, DerivativeListing.getChecksum(headers("Content-MD5", "mgNkuembtIDdJeHwKEyFVQ==")));
+        assertEquals(MD5, DerivativeListing.getChecksum(headers("Digest", "sha-256=abc, md5=mgNkuembtIDdJeHwKEyFVQ==")));
+    }
+
+    @Test
+    public void testNoChecksum() {
+        assertNull(DerivativeListing.getETagChecksum(headers("ETag", "\"1234-5678\"")));
+    }
+
+    private static HttpHeaders headers(String name, String value) {
+        return HttpHeaders.of(Map.of(name, List.of(value)), (a, b) -> true);
+    }
+}
@@ -0,0 +1,75 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FolderPrefetchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFilesAndChecksums() throws Exception {
+        Path media = folder.newFolder("media").toPath();
+        Path alto = folder.newFolder("alto").toPath();
+        Path image = media.resolve("00000001.tif");
+        Path xml = alto.resolve("00000001.xml");
+        Files.write(image, "image".getBytes(StandardCharsets.UTF_8));
+        Files.write(xml, "<alto/>".getBytes(StandardCharsets.UTF_8));
+        ChecksumCache cache = ChecksumCache.load(folder.newFolder("journal").toPath());
+
+        FolderPrefetch prefetch = FolderPrefetch.start(List.of(media.toString(), alto.toString()), true, cache);
+
+        Map<String, Map<Path, BasicFileAttributes>> files = prefetch.getFiles();
+        assertEquals(List.of(media.toString(), alto.toString()), List.copyOf(files.keySet()));
+        assertEquals(List.of(image), List.copyOf(files.get(media.toString()).keySet()));
+        Map<Path, String> checksums = prefetch.getChecksums();
+        assertEquals(2, checksums.size());
+        assertEquals(ChecksumService.md5Hex(image), checksums.get(image));
+        assertEquals(ChecksumService.md5Hex(xml), checksums.get(xml));
+        // the checksums are stored in the cache for the next ingest
+        assertEquals(checksums.get(image), cache.get(image, Files.readAttributes(image, BasicFileAttributes.class)));
+    }
+
+    @Test
+    public void testWithoutChecksums() throws Exception {
+        Path media = folder.newFolder("media").toPath();
+        Files.write(media.resolve("00000001.tif"), "image".getBytes(StandardCharsets.UTF_8));
+
+        FolderPrefetch prefetch = FolderPrefetch.start(List.of(media.toString()), false, null);
+        assertEquals(1, prefetch.getFiles().get(media.toString()).size());
+        assertTrue(prefetch.getChecksums().isEmpty());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Path media = folder.newFolder("media").toPath();
+        // a large sparse file keeps the generation of the checksum busy
+        try (RandomAccessFile file = new RandomAccessFile(media.resolve("00000001.tif").toFile(), "rw")) {
+            file.setLength(1024L * 1024 * 1024);
+        }
+
+        FolderPrefetch prefetch = FolderPrefetch.start(List.of(media.toString()), true, null);
+        prefetch.cancel();
+        try {
+            prefetch.getChecksums();
+            fail("cancelled checksums were returned");
+        } catch (InterruptedIOException e) {
+            // expected
+        }
+    }
+}
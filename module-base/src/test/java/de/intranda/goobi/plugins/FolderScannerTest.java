@@ -0,0 +1,65 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.sub.goobi.helper.StorageProviderInterface;
+
+public class FolderScannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testScanAll() throws Exception {
+        Path media = folder.newFolder("media").toPath();
+        Files.write(media.resolve("00000002.tif"), "22".getBytes(StandardCharsets.UTF_8));
+        Files.write(media.resolve("00000001.tif"), "1".getBytes(StandardCharsets.UTF_8));
+        Files.write(media.resolve(".hidden"), "x".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectory(media.resolve("sub"));
+        String missing = folder.getRoot().toPath().resolve("alto").toString();
+
+        Map<String, Map<Path, BasicFileAttributes>> result = FolderScanner.scanAll(List.of(media.toString(), missing));
+
+        Map<Path, BasicFileAttributes> files = result.get(media.toString());
+        assertEquals(List.of(media.resolve("00000001.tif"), media.resolve("00000002.tif")), List.copyOf(files.keySet()));
+        assertEquals(2, files.get(media.resolve("00000002.tif")).size());
+        assertTrue(result.get(missing).isEmpty());
+    }
+
+    @Test
+    public void testScanWithStorageProvider() throws Exception {
+        String media = "/opt/digiverso/goobi/metadata/1/images/00469418X_media";
+        Path first = Paths.get(media, "00000001.tif");
+        Path second = Paths.get(media, "00000002.tif");
+        Path hidden = Paths.get(media, ".hidden");
+        StorageProviderInterface storage = EasyMock.createMock(StorageProviderInterface.class);
+        EasyMock.expect(storage.listFiles(media)).andReturn(List.of(second, first, hidden));
+        EasyMock.expect(storage.getFileSize(first)).andReturn(1L);
+        EasyMock.expect(storage.getLastModifiedDate(first)).andReturn(1000L);
+        EasyMock.expect(storage.getFileSize(second)).andReturn(22L);
+        EasyMock.expect(storage.getLastModifiedDate(second)).andReturn(2000L);
+        EasyMock.replay(storage);
+
+        Map<Path, BasicFileAttributes> files = FolderScanner.scan(media, storage);
+
+        assertEquals(List.of(first, second), List.copyOf(files.keySet()));
+        assertEquals(22, files.get(second).size());
+        assertEquals(2000, files.get(second).lastModifiedTime().toMillis());
+        assertTrue(files.get(second).isRegularFile());
+        EasyMock.verify(storage);
+    }
+}
@@ -0,0 +1,47 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.model.IngestFile;
+
+public class IngestFileRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFilesAreRetriedUntilMaxTries() throws Exception {
+        Path media = folder.newFolder("media").toPath();
+        Files.write(media.resolve("00000001.tif"), "image".getBytes(StandardCharsets.UTF_8));
+        Files.write(media.resolve("00000002.tif"), "image".getBytes(StandardCharsets.UTF_8));
+        Map<Path, BasicFileAttributes> files = FolderScanner.scan(media.toString());
+
+        IngestFileRegistry list = new IngestFileRegistry();
+        Map<Path, IngestFile> created = new LinkedHashMap<>();
+        assertEquals(2, list.register(files, "media", created, 5).size());
+        assertEquals(2, created.size());
+        assertEquals("media", list.getByName("00000001.tif").getGoobiFileType());
+        assertEquals(Long.valueOf(5), list.getByName("00000001.tif").getGoobiSize());
+
+        // known files keep their state, a valid file and a file that was tried too often are not pending
+        list.getByName("00000001.tif").setValid(true);
+        list.getByName("00000002.tif").setUploadCounter(4);
+        created.clear();
+        assertEquals(1, list.register(files, "media", created, 5).size());
+        assertTrue(created.isEmpty());
+        list.getByName("00000002.tif").setUploadCounter(5);
+        assertTrue(list.register(files, "media", created, 5).isEmpty());
+    }
+}
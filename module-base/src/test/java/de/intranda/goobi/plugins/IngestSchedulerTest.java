@@ -0,0 +1,48 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+public class IngestSchedulerTest {
+
+    @Test
+    public void testSmallProcessFirst() throws Exception {
+        IngestScheduler scheduler = IngestScheduler.getInstance();
+        scheduler.setLimits(1, 1024);
+        List<String> order = new CopyOnWriteArrayList<>();
+        try (IngestScheduler.Ticket large = scheduler.register("large");
+                IngestScheduler.Ticket small = scheduler.register("small")) {
+            large.setRemaining(1000);
+            small.setRemaining(10);
+
+            IngestScheduler.Slot first = large.acquire(100);
+            Thread waitingLarge = upload(large, "large", order);
+            Thread waitingSmall = upload(small, "small", order);
+            while (waitingLarge.getState() != Thread.State.WAITING || waitingSmall.getState() != Thread.State.WAITING) {
+                Thread.sleep(10);
+            }
+            first.close();
+            waitingLarge.join();
+            waitingSmall.join();
+        } finally {
+            scheduler.setLimits(16, 512L * 1024 * 1024);
+        }
+        assertEquals(List.of("small", "large"), order);
+    }
+
+    private static Thread upload(IngestScheduler.Ticket ticket, String name, List<String> order) {
+        Thread t = new Thread(() -> {
+            try (IngestScheduler.Slot slot = ticket.acquire(10)) {
+                order.add(name);
+            } catch (Exception e) {
+                order.add("error");
+            }
+        });
+        t.start();
+        return t;
+    }
+}
@@ -0,0 +1,161 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.model.IngestFile;
+import de.intranda.goobi.plugins.model.IngestState;
+
+public class IngestStateStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MycoreStandInServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MycoreStandInServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testStateIsReadBack() throws Exception {
+        IngestStateStore store = new IngestStateStore(folder.newFolder("journal").toPath());
+        assertNull(store.load());
+
+        IngestState state = new IngestState();
+        state.setVolume("http://localhost/api/v2/objects/jportal_jpvolume_1");
+        state.setDerivative("http://localhost/api/v2/objects/jportal_jpvolume_1/derivates/d1");
+        IngestFile image = createFile("00000001.tif", "media", "image");
+        image.setValid(true);
+        image.setUploadCounter(2);
+        state.getFiles().add(image);
+        state.getFiles().add(createFile("00000001.xml", "alto", "<alto/>"));
+        store.save(state);
+
+        IngestState read = store.load();
+        assertEquals(state.getVolume(), read.getVolume());
+        assertEquals(state.getDerivative(), read.getDerivative());
+        assertEquals(2, read.getFiles().size());
+        IngestFile readImage = read.getFiles().get(0);
+        assertEquals(image.getGoobiFilePath(), readImage.getGoobiFilePath());
+        assertEquals(image.getGoobiChecksum(), readImage.getGoobiChecksum());
+        assertEquals(image.getModified().toInstant(), readImage.getModified().toInstant());
+        assertTrue(readImage.isValid());
+        assertFalse(read.getFiles().get(1).isValid());
+
+        store.delete();
+        assertNull(store.load());
+    }
+
+    @Test
+    public void testBrokenStateIsIgnored() throws Exception {
+        Path journal = folder.newFolder("journal").toPath();
+        Files.write(journal.resolve(IngestStateStore.FILENAME), "<state><files>".getBytes(StandardCharsets.UTF_8));
+        assertNull(new IngestStateStore(journal).load());
+    }
+
+    @Test
+    public void testOnlyUnchangedFilesAreRestored() throws Exception {
+        IngestState state = new IngestState();
+        IngestFile unchanged = createFile("00000001.tif", "media", "image");
+        unchanged.setValid(true);
+        unchanged.setUploadCounter(3);
+        IngestFile changed = createFile("00000002.tif", "media", "image");
+        IngestFile deleted = createFile("00000003.tif", "media", "image");
+        IngestFile alto = createFile("00000001.xml", "alto", "<alto/>");
+        IngestFile mets = createFile("meta.xml", "mets", "<mets/>");
+        state.getFiles().addAll(List.of(unchanged, changed, deleted, alto, mets));
+
+        Files.write(Path.of(changed.getGoobiFilePath()), "changed image".getBytes(StandardCharsets.UTF_8));
+        Files.delete(Path.of(deleted.getGoobiFilePath()));
+
+        IngestFileRegistry medias = new IngestFileRegistry();
+        IngestFileRegistry altos = new IngestFileRegistry();
+        IngestStateStore.restoreFiles(state, medias, altos);
+
+        assertEquals(1, medias.size());
+        assertTrue(medias.getByName("00000001.tif").isValid());
+        assertEquals(0, medias.getByName("00000001.tif").getUploadCounter());
+        assertEquals(1, altos.size());
+        assertEquals(alto, altos.getByName("00000001.xml"));
+    }
+
+    @Test
+    public void testResumeAfterPartialUpload() throws Exception {
+        String derivative = server.createDerivative();
+        IngestStateStore store = new IngestStateStore(folder.newFolder("journal").toPath());
+
+        // the first run is interrupted after two of three files
+        IngestFileRegistry medias = new IngestFileRegistry();
+        for (int i = 1; i <= 3; i++) {
+            medias.add(createFile("0000000" + i + ".tif", "media", "image " + i));
+        }
+        server.upload(derivative, "/contents/", Path.of(medias.getByName("00000001.tif").getGoobiFilePath()));
+        server.upload(derivative, "/contents/", Path.of(medias.getByName("00000002.tif").getGoobiFilePath()));
+        server.verify(derivative, "/contents/", medias);
+        IngestState state = new IngestState();
+        state.setDerivative(derivative);
+        state.getFiles().addAll(medias.getFiles());
+        store.save(state);
+
+        // the second run uploads only the missing file
+        IngestState resumed = store.load();
+        assertEquals(derivative, resumed.getDerivative());
+        IngestFileRegistry restored = new IngestFileRegistry();
+        IngestStateStore.restoreFiles(resumed, restored, new IngestFileRegistry());
+        assertEquals(3, restored.size());
+        List<IngestFile> pending = new ArrayList<>();
+        for (IngestFile f : restored) {
+            if (!f.isValid()) {
+                pending.add(f);
+            }
+        }
+        assertEquals(1, pending.size());
+        assertEquals("00000003.tif", pending.get(0).getName());
+
+        server.upload(derivative, "/contents/", Path.of(pending.get(0).getGoobiFilePath()));
+        server.verify(derivative, "/contents/", restored);
+        for (IngestFile f : restored) {
+            assertTrue(f.getName(), f.isValid());
+        }
+        assertEquals(3, (long) server.getRequests().get("PUT"));
+        assertEquals(3, server.getFiles(derivative).size());
+    }
+
+    private IngestFile createFile(String name, String type, String content) throws Exception {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        IngestFile f = new IngestFile();
+        f.setName(name);
+        f.setGoobiFileType(type);
+        f.setGoobiFilePath(file.toString());
+        f.setGoobiSize(attrs.size());
+        f.setModified(OffsetDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), ZoneOffset.UTC));
+        f.setGoobiChecksum(ChecksumService.md5Hex(file));
+        return f;
+    }
+}
@@ -0,0 +1,255 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.easymock.EasyMock;
+import org.goobi.beans.GoobiProperty;
+import org.goobi.beans.GoobiProperty.PropertyOwnerType;
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+import org.goobi.production.enums.PluginReturnValue;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.export.download.ExportMets;
+import de.sub.goobi.persistence.managers.JournalManager;
+import de.sub.goobi.persistence.managers.PropertyManager;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Full ingest of a synthetic process with thousands of images and ALTO files into the MyCoRe stand-in. The test is only
+ * run if the system property mycore.loadtest is set, e.g.
+ * mvn test -Dtest=MycoreIngestLoadTest -Dmycore.loadtest=true -Dmycore.loadtest.pages=5000
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ ConfigPlugins.class, ConfigurationHelper.class, JournalManager.class, PropertyManager.class,
+        MycoreIngestStepPlugin.class })
+@PowerMockIgnore({ "javax.management.*", "javax.xml.*", "org.xml.*", "org.w3c.*", "javax.net.ssl.*",
+        "jdk.internal.reflect.*", "com.sun.net.httpserver.*" })
+@Log4j2
+public class MycoreIngestLoadTest {
+
+    private static final String TITLE = "loadtest_00000001";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIngest() throws Exception {
+        Assume.assumeTrue("Load test is only run with -Dmycore.loadtest=true", Boolean.getBoolean("mycore.loadtest"));
+        int pages = Integer.getInteger("mycore.loadtest.pages", 2000);
+        int imageSize = Integer.getInteger("mycore.loadtest.image-kb", 512) * 1024;
+        int altoSize = Integer.getInteger("mycore.loadtest.alto-kb", 32) * 1024;
+
+        try (MycoreStandInServer server = new MycoreStandInServer()) {
+            server.setLatency(Long.getLong("mycore.loadtest.latency", 2));
+            server.setErrorRate(getRate("mycore.loadtest.error-rate", "0.005"), 503);
+            server.setThrottleRate(getRate("mycore.loadtest.throttle-rate", "0.005"), 0);
+            server.setCorruptionRate(getRate("mycore.loadtest.corruption-rate", "0.002"));
+
+            Process process = createProcess(pages, imageSize, altoSize);
+            mockGoobi(server);
+            Step step = new Step();
+            step.setTitel("MyCoRe ingest");
+            step.setProzess(process);
+            MycoreIngestStepPlugin plugin = new MycoreIngestStepPlugin();
+            plugin.initialize(step, "");
+
+            System.gc();
+            long heapBefore = getUsedHeap();
+            ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+            long start = System.nanoTime();
+            PluginReturnValue result = plugin.run();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long peakHeap = getPeakHeap();
+            System.gc();
+            long heapAfter = getUsedHeap();
+
+            String derivative = null;
+            for (GoobiProperty p : process.getEigenschaften()) {
+                if ("Derivat URL".equals(p.getPropertyName())) {
+                    derivative = p.getPropertyValue();
+                }
+            }
+            assertNotNull(derivative);
+            Map<String, MycoreStandInServer.StoredFile> files = server.getFiles(derivative);
+
+            long bytes = (long) pages * (imageSize + altoSize);
+            log.info("MyCoRe ingest load test: " + pages + " pages, " + (pages * 2 + 2) + " files, "
+                    + bytes / (1024 * 1024) + " MB, result " + result);
+            log.info(String.format("  duration %.1f s, %.1f files/s, %.1f MB/s (%.1f MB/s incl. retries)",
+                    seconds, files.size() / seconds, bytes / seconds / (1024 * 1024),
+                    server.getUploadedBytes() / seconds / (1024 * 1024)));
+            log.info("  heap before " + toMegabytes(heapBefore) + " MB, peak " + toMegabytes(peakHeap)
+                    + " MB, after " + toMegabytes(heapAfter) + " MB");
+            log.info("  requests " + server.getRequests() + ", max in flight " + server.getMaxInFlight()
+                    + ", injected errors " + server.getErrors() + ", throttled " + server.getThrottled()
+                    + ", corrupted " + server.getCorrupted());
+            log.info("  phases " + IngestMetrics.getInstance().getPhaseTimes());
+
+            assertEquals(PluginReturnValue.FINISH, result);
+            assertEquals(pages * 2 + 2, files.size());
+        }
+    }
+
+    private Process createProcess(int pages, int imageSize, int altoSize) throws Exception {
+        Path processFolder = folder.newFolder("metadata", "1").toPath();
+        Path media = Files.createDirectories(processFolder.resolve("images").resolve(TITLE + "_media"));
+        Path master = Files.createDirectories(processFolder.resolve("images").resolve(TITLE + "_master"));
+        Path alto = Files.createDirectories(processFolder.resolve("ocr").resolve(TITLE + "_alto"));
+        Path temp = folder.newFolder("temp").toPath();
+
+        Random random = new Random(42);
+        byte[] image = new byte[imageSize];
+        StringBuilder altoContent = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<alto>\n");
+        while (altoContent.length() < altoSize - 16) {
+            altoContent.append("<String CONTENT=\"Zeitung\" HPOS=\"120\" VPOS=\"340\" WIDTH=\"80\" HEIGHT=\"20\"/>\n");
+        }
+        altoContent.append("</alto>\n");
+        for (int i = 1; i <= pages; i++) {
+            String name = String.format("%08d", i);
+            random.nextBytes(image);
+            // TIFF header, the rest of the image is random and can not be compressed
+            image[0] = 'I';
+            image[1] = 'I';
+            image[2] = 42;
+            image[3] = 0;
+            Files.write(media.resolve(name + ".tif"), image);
+            Files.write(alto.resolve(name + ".xml"), altoContent.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(master.resolve("00000001.tif"), image);
+        Files.write(temp.resolve(TITLE + "_mets.xml"), createMets(pages).getBytes(StandardCharsets.UTF_8));
+        Files.write(temp.resolve(TITLE + "_mets_anchor.xml"), createMets(0).getBytes(StandardCharsets.UTF_8));
+
+        List<GoobiProperty> properties = new ArrayList<>();
+        GoobiProperty mycoreId = new GoobiProperty(PropertyOwnerType.PROCESS);
+        mycoreId.setPropertyName("MyCore-ID");
+        mycoreId.setPropertyValue("jportal_jpjournal_00000001");
+        properties.add(mycoreId);
+
+        Process process = EasyMock.createMock(Process.class);
+        EasyMock.expect(process.getId()).andReturn(1).anyTimes();
+        EasyMock.expect(process.getTitel()).andReturn(TITLE).anyTimes();
+        EasyMock.expect(process.getProcessDataDirectory()).andReturn(processFolder.toString() + "/").anyTimes();
+        EasyMock.expect(process.getImagesTifDirectory(false)).andReturn(media.toString() + "/").anyTimes();
+        EasyMock.expect(process.getImagesOrigDirectory(false)).andReturn(master.toString() + "/").anyTimes();
+        EasyMock.expect(process.getOcrAltoDirectory()).andReturn(alto.toString() + "/").anyTimes();
+        EasyMock.expect(process.getRepresentativeImageAsString())
+                .andReturn(media.resolve("00000001.tif").toString())
+                .anyTimes();
+        EasyMock.expect(process.getEigenschaftenList()).andReturn(properties).anyTimes();
+        EasyMock.expect(process.getEigenschaften()).andReturn(properties).anyTimes();
+        EasyMock.replay(process);
+        return process;
+    }
+
+    private void mockGoobi(MycoreStandInServer server) throws Exception {
+        Path xslt = Paths.get("../docs/goobimets.xsl");
+        if (!Files.exists(xslt)) {
+            xslt = Paths.get("docs/goobimets.xsl");
+        }
+        XMLConfiguration xml = new XMLConfiguration();
+        xml.setDelimiterParsingDisabled(true);
+        xml.load(new StringReader("<config_plugin><config>"
+                + "<xslt-url>" + xslt.toUri() + "</xslt-url>"
+                + "<mycore-api>" + server.getApiUrl() + "</mycore-api>"
+                + "<http2>false</http2>"
+                + "<request-backoff>20</request-backoff>"
+                + "<request-retries>8</request-retries>"
+                + "<upload-threads>" + Integer.getInteger("mycore.loadtest.threads", 16) + "</upload-threads>"
+                + "<upload-virtual-threads>true</upload-virtual-threads>"
+                + "<scheduler-max-connections>32</scheduler-max-connections>"
+                + "<resume>false</resume>"
+                + "</config></config_plugin>"));
+        SubnodeConfiguration config = xml.configurationAt("config");
+
+        PowerMock.mockStatic(ConfigPlugins.class);
+        EasyMock.expect(ConfigPlugins.getProjectAndStepConfig(EasyMock.anyString(), EasyMock.anyObject()))
+                .andReturn(config)
+                .anyTimes();
+        PowerMock.replay(ConfigPlugins.class);
+
+        PowerMock.mockStatic(ConfigurationHelper.class);
+        ConfigurationHelper configurationHelper = EasyMock.createMock(ConfigurationHelper.class);
+        EasyMock.expect(ConfigurationHelper.getInstance()).andReturn(configurationHelper).anyTimes();
+        EasyMock.expect(configurationHelper.getTemporaryFolder())
+                .andReturn(folder.getRoot().toPath().resolve("temp").toString() + "/")
+                .anyTimes();
+        EasyMock.expect(configurationHelper.getFolderForInternalJournalFiles()).andReturn("intern").anyTimes();
+        EasyMock.expect(configurationHelper.useS3()).andReturn(false).anyTimes();
+        EasyMock.replay(configurationHelper);
+        PowerMock.replay(ConfigurationHelper.class);
+
+        // the METS files are written by the test already
+        ExportMets export = EasyMock.createMock(ExportMets.class);
+        EasyMock.expect(export.startExport(EasyMock.anyObject(), EasyMock.anyString())).andReturn(true).anyTimes();
+        EasyMock.replay(export);
+        PowerMock.expectNew(ExportMets.class).andReturn(export).anyTimes();
+        PowerMock.replay(ExportMets.class);
+
+        PowerMock.suppress(PowerMock.method(JournalManager.class, "saveJournalEntry"));
+        PowerMock.suppress(PowerMock.method(PropertyManager.class, "saveProperty"));
+    }
+
+    private static String createMets(int pages) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\" xmlns:mods=\"http://www.loc.gov/mods/v3\">\n");
+        sb.append("<mets:dmdSec ID=\"DMDLOG_0000\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods>\n");
+        sb.append("<mods:originInfo><mods:dateIssued>1897</mods:dateIssued></mods:originInfo>\n");
+        sb.append("<mods:part><mods:detail type=\"volume\"><mods:number>42</mods:number></mods:detail></mods:part>\n");
+        sb.append("</mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>\n");
+        sb.append("<mets:structMap TYPE=\"PHYSICAL\"><mets:div TYPE=\"physSequence\">\n");
+        for (int i = 1; i <= pages; i++) {
+            sb.append("<mets:div ORDER=\"").append(i).append("\" TYPE=\"page\"/>\n");
+        }
+        sb.append("</mets:div></mets:structMap>\n</mets:mets>\n");
+        return sb.toString();
+    }
+
+    private static double getRate(String property, String defaultValue) {
+        return Double.parseDouble(System.getProperty(property, defaultValue));
+    }
+
+    private static long getUsedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long toMegabytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+}
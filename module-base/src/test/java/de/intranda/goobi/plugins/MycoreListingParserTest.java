@@ -0,0 +1,63 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.model.MycoreFile;
+
+public class MycoreListingParserTest {
+
+    private static final String LISTING = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<directory name=\"contents\" modified=\"2024-01-01T00:00:00Z\">"
+            + "<directory name=\"alto\" modified=\"2024-01-01T00:00:00Z\">"
+            + "<file name=\"00000001.xml\" md5=\"9a0364b9e99bb480dd25e1f0284c8555\" mimeType=\"text/xml\" size=\"7\"/>"
+            + "</directory>"
+            + "<directory name=\"empty\" modified=\"2024-01-01T00:00:00Z\"/>"
+            + "<file name=\"00000001.tif\" md5=\"9a0364b9e99bb480dd25e1f0284c8555\" mimeType=\"image/tiff\" size=\"7\"/>"
+            + "</directory>";
+
+    @Test
+    public void testNestedDirectories() throws Exception {
+        List<String> files = new ArrayList<>();
+        List<String> directories = new ArrayList<>();
+        MycoreListingParser.parse(new ByteArrayInputStream(LISTING.getBytes(StandardCharsets.UTF_8)), "/contents/",
+                new MycoreListingParser.Handler() {
+                    @Override
+                    public void file(String path, MycoreFile file) {
+                        files.add(path + file.getName() + " " + file.getMimeType() + " " + file.getSize());
+                    }
+
+                    @Override
+                    public void directory(String path) {
+                        directories.add(path);
+                    }
+                });
+
+        assertEquals(List.of("/contents/alto/00000001.xml text/xml 7", "/contents/00000001.tif image/tiff 7"), files);
+        assertEquals(List.of("/contents/alto/"), directories);
+    }
+
+    @Test
+    public void testMalformedSize() throws Exception {
+        String listing = "<directory name=\"contents\">"
+                + "<file name=\"00000001.tif\" md5=\"9a0364b9e99bb480dd25e1f0284c8555\" size=\"7 kB\"/>"
+                + "</directory>";
+        try {
+            MycoreListingParser.parse(new ByteArrayInputStream(listing.getBytes(StandardCharsets.UTF_8)), "/contents/",
+                    (path, file) -> fail("file with malformed size was reported"));
+            fail("malformed size was not reported");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("/contents/00000001.tif"));
+            assertTrue(e.getCause() instanceof NumberFormatException);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MycoreRequestControllerTest {
+
+    @Test
+    public void testRetryAfter() {
+        assertEquals(120000, MycoreRequestController.getRetryAfter(headers("Retry-After", "120")));
+        assertEquals(0, MycoreRequestController.getRetryAfter(headers("Retry-After", "Wed, 21 Oct 2015 07:28:00 GMT")));
+        assertEquals(0, MycoreRequestController.getRetryAfter(headers("Retry-After", "soon")));
+        assertEquals(0, MycoreRequestController.getRetryAfter(headers("ETag", "\"1\"")));
+    }
+
+    @Test
+    public void testBackoffGrows() {
+        for (int attempt = 1; attempt <= 5; attempt++) {
+            long delay = MycoreRequestController.getBackoff(attempt, 100);
+            long max = 100L << (attempt - 1);
+            assertTrue(delay >= max / 2 && delay <= max);
+        }
+    }
+
+    @Test
+    public void testOverloadReducesLimit() throws Exception {
+        MycoreRequestController controller = MycoreRequestController.getInstance("http://localhost:1/api/v2/", 8);
+        controller.acquire();
+        controller.onSuccess(1000000, 0);
+        int limit = controller.getLimit();
+        controller.acquire();
+        controller.onOverload(0);
+        assertTrue(controller.getLimit() <= Math.max(1, limit / 2));
+    }
+
+    private static HttpHeaders headers(String name, String value) {
+        return HttpHeaders.of(Map.of(name, List.of(value)), (a, b) -> true);
+    }
+}
@@ -0,0 +1,310 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.model.IngestFile;
+
+public class MycoreRestClientTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MycoreStandInServer server;
+    private MycoreRestClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MycoreStandInServer();
+        client = server.getClient();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testUploadAndVerify() throws Exception {
+        String derivative = server.createDerivative();
+        IngestFileRegistry medias = new IngestFileRegistry();
+        IngestFileRegistry altos = new IngestFileRegistry();
+        IngestFile image = upload(derivative, "/contents/", "00000001.tif", "image", medias);
+        IngestFile alto = upload(derivative, "/contents/alto/", "00000001.xml", "<alto/>", altos);
+
+        DerivativeListing listing = new DerivativeListing(client, derivative);
+        listing.addDirectory("/contents/", medias);
+        listing.addDirectory("/contents/alto/", altos);
+        listing.verifyAll();
+
+        assertTrue(image.isValid());
+        assertTrue(alto.isValid());
+        assertEquals(Long.valueOf(5), image.getMycoreSize());
+        assertEquals(derivative + "/contents/alto/00000001.xml", alto.getMycoreUrl());
+        Map<String, MycoreStandInServer.StoredFile> files = server.getFiles(derivative);
+        assertEquals(2, files.size());
+        assertEquals(image.getGoobiChecksum(), files.get("/00000001.tif").getMd5());
+    }
+
+    @Test
+    public void testOverloadIsRepeated() throws Exception {
+        String derivative = server.createDerivative();
+        server.failNext(2, 429);
+        IngestFileRegistry medias = new IngestFileRegistry();
+        upload(derivative, "/contents/", "00000001.tif", "image", medias);
+        assertEquals(2, server.getErrors());
+        assertEquals(1, server.getFiles(derivative).size());
+    }
+
+    @Test
+    public void testStreamedPostIsRepeatedAfterOverload() throws Exception {
+        server.failNext(1, 429);
+        AtomicInteger runs = new AtomicInteger();
+        HttpResponse<String> response = client.post(server.getApiUrl() + "objects", "application/xml", 15, out -> {
+            runs.incrementAndGet();
+            out.write("<mycoreobject/>".getBytes(StandardCharsets.UTF_8));
+        });
+        assertEquals(201, response.statusCode());
+        // the repeated request writes the body again from scratch
+        assertEquals(2, runs.get());
+        assertEquals(1, server.getErrors());
+    }
+
+    @Test
+    public void testStreamedPostReportsWriterFailure() throws Exception {
+        IllegalStateException failure = new IllegalStateException("transformation failed");
+        try {
+            client.post(server.getApiUrl() + "objects", "application/xml", 0, out -> {
+                out.write("<mycoreobject>".getBytes(StandardCharsets.UTF_8));
+                throw failure;
+            });
+            fail("failure of the writer was not reported");
+        } catch (IOException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void testStreamedPostLargerThanPipe() throws Exception {
+        StringBuilder expected = new StringBuilder("<mycoreobject>");
+        for (int i = 0; expected.length() < 1024 * 1024; i++) {
+            expected.append("<page order=\"").append(i).append("\"/>");
+        }
+        expected.append("</mycoreobject>");
+        byte[] bytes = expected.toString().getBytes(StandardCharsets.UTF_8);
+        HttpResponse<String> response =
+                client.post(server.getApiUrl() + "objects", "application/xml", bytes.length, out -> {
+                    // single bytes and blocks of different sizes
+                    int pos = 0;
+                    for (int len = 1; pos < bytes.length; len = len * 3 % 70001) {
+                        if (len == 1) {
+                            out.write(bytes[pos++]);
+                        } else {
+                            int n = Math.min(len, bytes.length - pos);
+                            out.write(bytes, pos, n);
+                            pos += n;
+                        }
+                    }
+                });
+        assertEquals(201, response.statusCode());
+        assertEquals(expected.toString(), server.getLastObject());
+    }
+
+    @Test
+    public void testPermitIsReleasedBeforeRetry() throws Exception {
+        String derivative = server.createDerivative();
+        server.failNext(2, 429);
+        Path file = folder.getRoot().toPath().resolve("00000001.tif");
+        Files.write(file, "image".getBytes(StandardCharsets.UTF_8));
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicInteger held = new AtomicInteger();
+        MycoreRestClient.Permit permit = () -> {
+            // the permit of the failed attempt has to be returned before the next attempt
+            assertEquals(0, held.getAndIncrement());
+            acquired.incrementAndGet();
+            return held::decrementAndGet;
+        };
+        HttpResponse<String> response =
+                client.put(derivative + "/contents/00000001.tif", file, "image/tif", null, false, permit);
+        assertEquals(201, response.statusCode());
+        assertEquals(3, acquired.get());
+        assertEquals(0, held.get());
+    }
+
+    @Test
+    public void testServerErrorIsNotRepeated() throws Exception {
+        server.failNext(1, 500);
+        HttpResponse<String> response =
+                client.post(server.getApiUrl() + "objects", "application/xml", "<mycoreobject/>");
+        assertEquals(500, response.statusCode());
+        assertEquals(1, server.getErrors());
+    }
+
+    @Test
+    public void testCorruptedFileIsDetected() throws Exception {
+        String derivative = server.createDerivative();
+        server.corruptNext(1);
+        IngestFileRegistry medias = new IngestFileRegistry();
+        IngestFile image = upload(derivative, "/contents/", "00000001.tif", "image", medias);
+
+        DerivativeListing listing = new DerivativeListing(client, derivative);
+        listing.addDirectory("/contents/", medias);
+        listing.verifyAll();
+        assertFalse(image.isValid());
+
+        // the second upload is stored correctly and found with a HEAD request
+        upload(derivative, "/contents/", "00000001.tif", "image", medias);
+        listing.verifyPending();
+        assertTrue(image.isValid());
+    }
+
+    @Test
+    public void testOpaqueETagIsConfirmedWithListing() throws Exception {
+        String derivative = server.createDerivative();
+        server.setOpaqueETags(true);
+        IngestFileRegistry medias = new IngestFileRegistry();
+        IngestFile image = upload(derivative, "/contents/", "00000001.tif", "image", medias);
+
+        // the ETag does not match the checksum, the listing confirms that the file is correct
+        DerivativeListing listing = new DerivativeListing(client, derivative);
+        listing.addDirectory("/contents/", medias);
+        listing.verifyPending();
+        assertTrue(image.isValid());
+        assertEquals(1, (long) server.getRequests().get("GET"));
+    }
+
+    @Test
+    public void testCompressedUpload() throws Exception {
+        String derivative = server.createDerivative();
+        Path file = createAlto("00000001.xml");
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        HttpResponse<String> response =
+                client.put(derivative + "/contents/alto/00000001.xml", file, "application/xml", digest, true);
+        assertEquals(201, response.statusCode());
+
+        // the stored file and the digest match the uncompressed content
+        MycoreStandInServer.StoredFile stored = server.getFiles(derivative).get("/alto/00000001.xml");
+        assertEquals(ChecksumService.md5Hex(file), stored.getMd5());
+        assertEquals(ChecksumService.md5Hex(file), Hex.encodeHexString(digest.digest()));
+        assertEquals(Files.size(file), stored.getSize());
+        assertEquals(1, server.getCompressedUploads());
+        assertTrue(server.getTransferredBytes() < Files.size(file) / 5);
+    }
+
+    @Test
+    public void testRejectedCompressionIsSentUncompressed() throws Exception {
+        String derivative = server.createDerivative();
+        server.setAcceptCompression(false);
+        Path file = createAlto("00000001.xml");
+        HttpResponse<String> response =
+                client.put(derivative + "/contents/alto/00000001.xml", file, "application/xml", null, true);
+        assertEquals(201, response.statusCode());
+        assertEquals(ChecksumService.md5Hex(file), server.getFiles(derivative).get("/alto/00000001.xml").getMd5());
+
+        // further uploads to the server are not compressed anymore
+        long puts = server.getRequests().get("PUT");
+        client.put(derivative + "/contents/alto/00000002.xml", createAlto("00000002.xml"), "application/xml", null,
+                true);
+        assertEquals(puts + 1, (long) server.getRequests().get("PUT"));
+        assertEquals(0, server.getCompressedUploads());
+    }
+
+    @Test
+    public void testUndecodedCompressionIsSentUncompressed() throws Exception {
+        String derivative = server.createDerivative();
+        server.setDecodeCompression(false);
+        Path file = createAlto("00000001.xml");
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        HttpResponse<String> response =
+                client.put(derivative + "/contents/alto/00000001.xml", file, "application/xml", digest, true);
+        assertEquals(204, response.statusCode());
+
+        // the compressed bytes that were stored are replaced with the uncompressed file
+        MycoreStandInServer.StoredFile stored = server.getFiles(derivative).get("/alto/00000001.xml");
+        assertEquals(ChecksumService.md5Hex(file), stored.getMd5());
+        assertEquals(Files.size(file), stored.getSize());
+        assertEquals(ChecksumService.md5Hex(file), Hex.encodeHexString(digest.digest()));
+        assertEquals(1, server.getCompressedUploads());
+        assertEquals(1, (long) server.getRequests().get("HEAD"));
+
+        // further uploads to the server are not compressed anymore
+        client.put(derivative + "/contents/alto/00000002.xml", createAlto("00000002.xml"), "application/xml", null,
+                true);
+        assertEquals(1, server.getCompressedUploads());
+        assertEquals(3, (long) server.getRequests().get("PUT"));
+    }
+
+    @Test
+    public void testUploadTimeoutFollowsActiveLimit() throws Exception {
+        MycoreClientSettings settings = new MycoreClientSettings();
+        MycoreRequestController controller = MycoreRequestController.getInstance(server.getApiUrl(), 4);
+        BandwidthLimiter limiter = BandwidthLimiter.getInstance(server.getApiUrl());
+        MycoreRestClient limited = new MycoreRestClient("goobi", "secret", controller, limiter, settings);
+        long size = 1024 * 1024;
+
+        // a profile that is not active now keeps the usual timeout
+        LocalTime now = LocalTime.now();
+        limiter.setProfiles(Collections.singletonList(
+                new BandwidthProfile(now.plusHours(1), now.plusHours(2), 1024, 0)));
+        assertEquals(settings.getTimeout(size), limited.getUploadTimeout(size));
+
+        // an active limit extends the timeout to the share of each concurrent request
+        limiter.setProfiles(Collections.singletonList(
+                new BandwidthProfile(LocalTime.MIDNIGHT, LocalTime.MIDNIGHT, 1024, 0)));
+        long share = 1024 / Math.max(1, controller.getLimit());
+        assertEquals(Duration.ofSeconds(settings.getRequestTimeout() + size / share),
+                limited.getUploadTimeout(size));
+        limiter.setProfiles(Collections.emptyList());
+    }
+
+    private Path createAlto(String name) throws Exception {
+        StringBuilder alto = new StringBuilder("<alto><Layout><Page><PrintSpace>");
+        for (int i = 0; i < 2000; i++) {
+            alto.append("<String ID=\"s").append(i).append("\" HPOS=\"").append(i % 800).append("\" VPOS=\"")
+                    .append(i / 10).append("\" CONTENT=\"word\"/>");
+        }
+        alto.append("</PrintSpace></Page></Layout></alto>");
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, alto.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private IngestFile upload(String derivative, String path, String name, String content, IngestFileRegistry list)
+            throws Exception {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        server.upload(derivative, path, file);
+        IngestFile f = list.getByName(name);
+        if (f == null) {
+            f = new IngestFile();
+            f.setName(name);
+            f.setGoobiFilePath(file.toString());
+            f.setGoobiChecksum(ChecksumService.md5Hex(file));
+            list.add(f);
+        }
+        return f;
+    }
+}
@@ -0,0 +1,582 @@
+package de.intranda.goobi.plugins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the REST API v2 of MyCoRe. It creates objects and derivatives, stores the checksums and sizes of
+ * uploaded files (not their content) and delivers listings and HEAD responses for them. Latency, errors, throttling
+ * with 429 and corrupted checksums can be injected, either for a share of all requests or for the next requests.
+ * Uploads with gzip content encoding are decoded unless compression is switched off, then they are rejected with 415,
+ * or decoding is switched off, then the compressed bytes are stored.
+ * The helpers for the tests create derivatives, upload and verify files with a client that is logged in to the server.
+ */
+public class MycoreStandInServer implements AutoCloseable {
+
+    private static final String BASE = "/api/v2/";
+    private static final Pattern OBJECTS = Pattern.compile("^/api/v2/objects/?$");
+    private static final Pattern DERIVATES = Pattern.compile("^/api/v2/objects/([^/]+)/derivates/?$");
+    private static final Pattern CONTENTS =
+            Pattern.compile("^/api/v2/objects/([^/]+)/derivates/([^/]+)/contents(/.*)?$");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Random random = new Random(42);
+
+    private final Set<String> objects = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> derivates = new ConcurrentHashMap<>();
+    // files of all derivatives, the key is the derivative followed by the path of the file, e.g. derivate/alto/1.xml
+    private final NavigableMap<String, StoredFile> files = new ConcurrentSkipListMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private volatile long latency;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile double throttleRate;
+    private volatile int retryAfter;
+    private volatile double corruptionRate;
+    private volatile boolean acceptCompression = true;
+    private volatile boolean decodeCompression = true;
+    private volatile boolean opaqueETags;
+    private final AtomicInteger nextErrors = new AtomicInteger();
+    private final AtomicInteger nextCorruptions = new AtomicInteger();
+    private volatile String lastObject;
+
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder corrupted = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder transferredBytes = new LongAdder();
+    private final LongAdder compressedUploads = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private MycoreRestClient client;
+
+    /**
+     * start a server on a free port of the loopback interface
+     *
+     * @throws IOException
+     */
+    public MycoreStandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext(BASE, this::handle);
+        server.start();
+    }
+
+    /**
+     * URL of the API as it is configured as mycore-api
+     *
+     * @return
+     */
+    public String getApiUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + BASE;
+    }
+
+    /**
+     * client that is logged in to the server, retries are repeated after a short backoff
+     *
+     * @return
+     */
+    public synchronized MycoreRestClient getClient() {
+        if (client == null) {
+            MycoreClientSettings settings = new MycoreClientSettings();
+            settings.setRetries(3);
+            settings.setBackoff(10);
+            client = new MycoreRestClient("goobi", "secret", MycoreRequestController.getInstance(getApiUrl(), 4),
+                    BandwidthLimiter.getInstance(getApiUrl()), settings);
+        }
+        return client;
+    }
+
+    /**
+     * create a volume with a derivative
+     *
+     * @return URL of the derivative
+     * @throws IOException
+     */
+    public String createDerivative() throws IOException {
+        HttpResponse<String> volume = getClient().post(getApiUrl() + "objects", "application/xml", "<mycoreobject/>");
+        if (volume.statusCode() != 201) {
+            throw new IOException("Volume was not created: " + volume.statusCode());
+        }
+        String location = volume.headers().firstValue("Location").get();
+        HttpResponse<String> derivative = getClient().post(location + "/derivates",
+                "application/x-www-form-urlencoded", "maindoc=00000001.tif");
+        if (derivative.statusCode() != 201) {
+            throw new IOException("Derivative was not created: " + derivative.statusCode());
+        }
+        return derivative.headers().firstValue("Location").get();
+    }
+
+    /**
+     * upload a file into a directory of a derivative
+     *
+     * @param derivative URL of the derivative
+     * @param path directory inside of the derivative, e.g. /contents/alto/
+     * @param file
+     * @throws IOException if the upload was not successful
+     */
+    public void upload(String derivative, String path, Path file) throws IOException {
+        HttpResponse<String> response =
+                getClient().put(derivative + path + file.getFileName(), file, "application/octet-stream");
+        if (response.statusCode() != 201 && response.statusCode() != 204) {
+            throw new IOException("Upload of " + file + " failed: " + response.statusCode());
+        }
+    }
+
+    /**
+     * compare the files of a directory with the listing of the derivative
+     *
+     * @param derivative URL of the derivative
+     * @param path directory inside of the derivative, e.g. /contents/
+     * @param list
+     * @throws IOException
+     */
+    public void verify(String derivative, String path, IngestFileRegistry list) throws IOException {
+        DerivativeListing listing = new DerivativeListing(getClient(), derivative);
+        listing.addDirectory(path, list);
+        listing.verifyAll();
+    }
+
+    /**
+     * delay of each response in milliseconds
+     *
+     * @param latency
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * share of requests that are answered with an error
+     *
+     * @param errorRate value between 0 and 1
+     * @param status status of the error, 503 is repeated by the client, 500 is not
+     */
+    public void setErrorRate(double errorRate, int status) {
+        this.errorRate = errorRate;
+        this.errorStatus = status;
+    }
+
+    /**
+     * share of requests that are answered with 429 Too Many Requests
+     *
+     * @param throttleRate value between 0 and 1
+     * @param retryAfter seconds sent in the Retry-After header
+     */
+    public void setThrottleRate(double throttleRate, int retryAfter) {
+        this.throttleRate = throttleRate;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * share of uploads whose checksum is stored wrong, like a file that was damaged during the transfer
+     *
+     * @param corruptionRate value between 0 and 1
+     */
+    public void setCorruptionRate(double corruptionRate) {
+        this.corruptionRate = corruptionRate;
+    }
+
+    /**
+     * accept uploads with gzip content encoding, otherwise they are answered with 415
+     *
+     * @param acceptCompression
+     */
+    public void setAcceptCompression(boolean acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+
+    /**
+     * decode uploads with gzip content encoding, otherwise the compressed bytes are stored like a server that accepts
+     * the header but ignores it
+     *
+     * @param decodeCompression
+     */
+    public void setDecodeCompression(boolean decodeCompression) {
+        this.decodeCompression = decodeCompression;
+    }
+
+    /**
+     * send ETags that look like MD5 checksums but are not, like a proxy that generates its own ETags
+     *
+     * @param opaqueETags
+     */
+    public void setOpaqueETags(boolean opaqueETags) {
+        this.opaqueETags = opaqueETags;
+    }
+
+    /**
+     * answer the next requests with an error
+     *
+     * @param count
+     * @param status
+     */
+    public void failNext(int count, int status) {
+        this.errorStatus = status;
+        nextErrors.set(count);
+    }
+
+    /**
+     * store a wrong checksum for the next uploads
+     *
+     * @param count
+     */
+    public void corruptNext(int count) {
+        nextCorruptions.set(count);
+    }
+
+    /**
+     * get the files of a derivative
+     *
+     * @param derivativeLocation URL of the derivative as returned by the server
+     * @return files by their path inside of the contents, e.g. /alto/00000001.xml
+     */
+    public Map<String, StoredFile> getFiles(String derivativeLocation) {
+        String derivate = derivativeLocation.substring(derivativeLocation.lastIndexOf('/') + 1);
+        Map<String, StoredFile> result = new TreeMap<>();
+        files.subMap(derivate + "/", derivate + "/\uffff")
+                .forEach((k, v) -> result.put(k.substring(derivate.length()), v));
+        return result;
+    }
+
+    /**
+     * body of the last object that was created
+     *
+     * @return
+     */
+    public String getLastObject() {
+        return lastObject;
+    }
+
+    /**
+     * number of requests by method
+     *
+     * @return
+     */
+    public Map<String, Long> getRequests() {
+        Map<String, Long> result = new TreeMap<>();
+        requests.forEach((k, v) -> result.put(k, v.sum()));
+        return result;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    public long getCorrupted() {
+        return corrupted.sum();
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes.sum();
+    }
+
+    /**
+     * bytes of all uploads as they were received, before they were decoded
+     *
+     * @return
+     */
+    public long getTransferredBytes() {
+        return transferredBytes.sum();
+    }
+
+    public long getCompressedUploads() {
+        return compressedUploads.sum();
+    }
+
+    /**
+     * highest number of requests that were handled at the same time
+     *
+     * @return
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int running = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(running, Math::max);
+        try (exchange) {
+            requests.computeIfAbsent(exchange.getRequestMethod(), m -> new LongAdder()).increment();
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            if (nextErrors.getAndUpdate(n -> Math.max(0, n - 1)) > 0 || chance(errorRate)) {
+                errors.increment();
+                drain(exchange);
+                send(exchange, errorStatus, "Injected error");
+                return;
+            }
+            if (chance(throttleRate)) {
+                throttled.increment();
+                drain(exchange);
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfter));
+                send(exchange, 429, "Too many requests");
+                return;
+            }
+            route(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        Matcher m;
+        if ((m = OBJECTS.matcher(path)).matches() && "POST".equals(method)) {
+            createObject(exchange);
+        } else if ((m = DERIVATES.matcher(path)).matches() && "POST".equals(method)) {
+            createDerivate(exchange, m.group(1));
+        } else if ((m = CONTENTS.matcher(path)).matches()) {
+            String derivate = m.group(2);
+            String file = m.group(3) == null ? "/" : URLDecoder.decode(m.group(3), StandardCharsets.UTF_8);
+            if (!m.group(1).equals(derivates.get(derivate))) {
+                drain(exchange);
+                send(exchange, 404, "Unknown derivate " + derivate);
+            } else if ("PUT".equals(method)) {
+                upload(exchange, derivate, file);
+            } else if ("GET".equals(method) && file.endsWith("/")) {
+                listing(exchange, derivate, file);
+            } else if ("HEAD".equals(method)) {
+                head(exchange, derivate, file);
+            } else if ("DELETE".equals(method)) {
+                send(exchange, files.remove(derivate + file) != null ? 204 : 404, null);
+            } else {
+                send(exchange, 405, "Method not allowed");
+            }
+        } else {
+            drain(exchange);
+            send(exchange, 404, "Not found");
+        }
+    }
+
+    private void createObject(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        if (!body.contains("mycoreobject")) {
+            send(exchange, 400, "No MyCoRe object");
+            return;
+        }
+        lastObject = body;
+        String id = String.format("jportal_jpvolume_%08d", sequence.incrementAndGet());
+        objects.add(id);
+        exchange.getResponseHeaders().set("Location", getApiUrl() + "objects/" + id);
+        send(exchange, 201, null);
+    }
+
+    private void createDerivate(HttpExchange exchange, String object) throws IOException {
+        drain(exchange);
+        if (!objects.contains(object)) {
+            send(exchange, 404, "Unknown object " + object);
+            return;
+        }
+        String id = String.format("jportal_derivate_%08d", sequence.incrementAndGet());
+        derivates.put(id, object);
+        exchange.getResponseHeaders().set("Location", getApiUrl() + "objects/" + object + "/derivates/" + id);
+        send(exchange, 201, null);
+    }
+
+    private void upload(HttpExchange exchange, String derivate, String file) throws IOException {
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        long size = 0;
+        byte[] buffer = new byte[64 * 1024];
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        if (encoding != null && !("gzip".equals(encoding) && acceptCompression)) {
+            drain(exchange);
+            send(exchange, 415, "Unsupported content encoding " + encoding);
+            return;
+        }
+        InputStream body = new FilterInputStream(exchange.getRequestBody()) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    transferredBytes.add(read);
+                }
+                return read;
+            }
+        };
+        if (encoding != null) {
+            compressedUploads.increment();
+            if (decodeCompression) {
+                body = new GZIPInputStream(body);
+            }
+        }
+        try (InputStream in = body) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        uploadedBytes.add(size);
+        String md5 = Hex.encodeHexString(digest.digest());
+        if (nextCorruptions.getAndUpdate(n -> Math.max(0, n - 1)) > 0 || chance(corruptionRate)) {
+            corrupted.increment();
+            md5 = new StringBuilder(md5).reverse().toString();
+        }
+        String mimeType = exchange.getRequestHeaders().getFirst("Content-Type");
+        StoredFile old = files.put(derivate + file, new StoredFile(size, md5, mimeType));
+        send(exchange, old == null ? 201 : 204, null);
+    }
+
+    private void head(HttpExchange exchange, String derivate, String file) throws IOException {
+        StoredFile f = files.get(derivate + file);
+        if (f == null) {
+            send(exchange, 404, null);
+            return;
+        }
+        String etag = opaqueETags ? DigestUtils.md5Hex(derivate + file + f.getModified()) : f.getMd5();
+        exchange.getResponseHeaders().set("ETag", "\"" + etag + "\"");
+        exchange.getResponseHeaders().set("Content-Length", String.valueOf(f.getSize()));
+        if (f.getMimeType() != null) {
+            exchange.getResponseHeaders().set("Content-Type", f.getMimeType());
+        }
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    /**
+     * listing of a directory in the format of MyCoRe, subdirectories are listed without their content
+     */
+    private void listing(HttpExchange exchange, String derivate, String directory) throws IOException {
+        String prefix = derivate + directory;
+        Set<String> subdirectories = new TreeSet<>();
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, StoredFile> e : files.subMap(prefix, prefix + "\uffff").entrySet()) {
+            String name = e.getKey().substring(prefix.length());
+            int slash = name.indexOf('/');
+            if (slash >= 0) {
+                subdirectories.add(name.substring(0, slash));
+                continue;
+            }
+            StoredFile f = e.getValue();
+            content.append("  <file name=\"").append(name).append("\" size=\"").append(f.getSize());
+            content.append("\" md5=\"").append(f.getMd5()).append("\" mimeType=\"").append(f.getMimeType());
+            content.append("\" modified=\"").append(f.getModified()).append("\" />\n");
+        }
+        if (content.length() == 0 && subdirectories.isEmpty() && !"/".equals(directory)) {
+            send(exchange, 404, null);
+            return;
+        }
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        String name = directory.substring(0, directory.length() - 1);
+        name = name.isEmpty() ? "/" : name.substring(name.lastIndexOf('/') + 1);
+        xml.append("<directory name=\"").append(name).append("\" modified=\"").append(now()).append("\">\n");
+        for (String sub : subdirectories) {
+            xml.append("  <directory name=\"").append(sub).append("\" modified=\"").append(now()).append("\" />\n");
+        }
+        xml.append(content).append("</directory>\n");
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        send(exchange, 200, xml.toString());
+    }
+
+    private boolean chance(double rate) {
+        if (rate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private static void drain(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null || "HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static OffsetDateTime now() {
+        return OffsetDateTime.now(ZoneOffset.UTC);
+    }
+
+    /**
+     * a file that was uploaded to the stand-in
+     */
+    public static class StoredFile {
+        private final long size;
+        private final String md5;
+        private final String mimeType;
+        private final OffsetDateTime modified = now();
+
+        private StoredFile(long size, String md5, String mimeType) {
+            this.size = size;
+            this.md5 = md5;
+            this.mimeType = mimeType;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public OffsetDateTime getModified() {
+            return modified;
+        }
+    }
+}
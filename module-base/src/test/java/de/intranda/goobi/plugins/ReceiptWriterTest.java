@@ -0,0 +1,140 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.model.IngestFile;
+import de.intranda.goobi.plugins.model.IngestReceipt;
+
+public class ReceiptWriterTest {
+
+    private static final String DERIVATIVE = "http://localhost/api/v2/objects/jportal_jpvolume_1/derivates/d1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReceiptIsReadBack() throws Exception {
+        Path journal = folder.newFolder("journal").toPath();
+        IngestReceipt receipt = receipt(LocalDateTime.of(2024, 5, 1, 10, 0), DERIVATIVE);
+        receipt.setTimings(Map.of("upload", 1234L));
+        IngestFile image = file("00000001.tif", "media", true);
+        IngestFile alto = file("00000001.xml", "alto", false);
+
+        ReceiptWriter writer = new ReceiptWriter(journal, receipt);
+        writer.start();
+        writer.append(List.of(image));
+        // files that were appended before are not written twice
+        writer.append(List.of(image, alto));
+        assertTrue(writer.finish("FINISHED", "all files ingested"));
+        assertFalse(writer.finish("ERROR", "ignored"));
+
+        IngestReceipt read = ReceiptWriter.findLatest(journal);
+        assertEquals("FINISHED", read.getStatus());
+        assertEquals("all files ingested", read.getDetails());
+        assertEquals(DERIVATIVE, read.getDerivative());
+        assertEquals(receipt.getVolume(), read.getVolume());
+        assertEquals(Long.valueOf(1234), read.getTimings().get("upload"));
+        assertEquals(2, read.getFiles().size());
+
+        IngestFile readImage = read.getFiles().get(0);
+        assertEquals("00000001.tif", readImage.getName());
+        assertEquals("media", readImage.getGoobiFileType());
+        assertEquals(image.getGoobiChecksum(), readImage.getGoobiChecksum());
+        assertEquals(image.getMycoreChecksum(), readImage.getMycoreChecksum());
+        assertEquals(image.getGoobiSize(), readImage.getGoobiSize());
+        assertEquals(image.getMycoreUrl(), readImage.getMycoreUrl());
+        assertEquals(image.getModified().toInstant(), readImage.getModified().toInstant());
+        assertTrue(readImage.isValid());
+        assertFalse(read.getFiles().get(1).isValid());
+    }
+
+    @Test
+    public void testFinalStateOfFilesIsUsed() throws Exception {
+        Path journal = folder.newFolder("journal").toPath();
+        IngestFile image = file("00000001.tif", "media", true);
+        IngestFile alto = file("00000001.xml", "alto", false);
+        ReceiptWriter writer = new ReceiptWriter(journal, receipt(LocalDateTime.of(2024, 5, 1, 10, 0), DERIVATIVE));
+        writer.start();
+        writer.append(List.of(image, alto));
+
+        // a later verification finds the image corrupted and the ALTO file correct
+        image.setValid(false);
+        image.setMycoreChecksum("00000000000000000000000000000000");
+        alto.setValid(true);
+        alto.setMycoreChecksum(alto.getGoobiChecksum());
+        writer.append(List.of(alto));
+        writer.finish("FINISHED", "");
+
+        IngestReceipt read = ReceiptWriter.findLatest(journal);
+        assertEquals(2, read.getFiles().size());
+        assertEquals("00000001.tif", read.getFiles().get(0).getName());
+        assertFalse(read.getFiles().get(0).isValid());
+        assertEquals("00000000000000000000000000000000", read.getFiles().get(0).getMycoreChecksum());
+        assertEquals("00000001.xml", read.getFiles().get(1).getName());
+        assertTrue(read.getFiles().get(1).isValid());
+    }
+
+    @Test
+    public void testOnlyFinishedReceiptsAreUsed() throws Exception {
+        Path journal = folder.newFolder("journal").toPath();
+        ReceiptWriter finished = new ReceiptWriter(journal, receipt(LocalDateTime.of(2024, 5, 1, 10, 0), DERIVATIVE));
+        finished.start();
+        finished.append(List.of(file("00000001.tif", "media", true)));
+        finished.finish("FINISHED", "");
+
+        // a newer failed ingest and a newer interrupted ingest are skipped
+        ReceiptWriter failed = new ReceiptWriter(journal, receipt(LocalDateTime.of(2024, 5, 2, 10, 0), DERIVATIVE + "x"));
+        failed.start();
+        failed.finish("ERROR", "upload failed");
+        ReceiptWriter interrupted =
+                new ReceiptWriter(journal, receipt(LocalDateTime.of(2024, 5, 3, 10, 0), DERIVATIVE + "y"));
+        interrupted.start();
+        interrupted.append(List.of(file("00000001.tif", "media", true)));
+
+        IngestReceipt latest = ReceiptWriter.findLatest(journal);
+        assertEquals(DERIVATIVE, latest.getDerivative());
+        assertEquals(1, latest.getFiles().size());
+    }
+
+    @Test
+    public void testNoReceipt() throws Exception {
+        assertNull(ReceiptWriter.findLatest(folder.getRoot().toPath().resolve("missing")));
+        assertNull(ReceiptWriter.findLatest(folder.newFolder("empty").toPath()));
+    }
+
+    private static IngestReceipt receipt(LocalDateTime begin, String derivative) {
+        IngestReceipt receipt = new IngestReceipt();
+        receipt.setBeginn(begin);
+        receipt.setVolume("http://localhost/api/v2/objects/jportal_jpvolume_1");
+        receipt.setDerivative(derivative);
+        return receipt;
+    }
+
+    private static IngestFile file(String name, String type, boolean valid) {
+        IngestFile f = new IngestFile();
+        f.setName(name);
+        f.setGoobiFileType(type);
+        f.setGoobiFilePath("/opt/digiverso/goobi/metadata/1/images/" + name);
+        f.setGoobiChecksum("9a0364b9e99bb480dd25e1f0284c8555");
+        f.setMycoreChecksum(valid ? "9a0364b9e99bb480dd25e1f0284c8555" : "00000000000000000000000000000000");
+        f.setGoobiSize(5L);
+        f.setMycoreSize(5L);
+        f.setMycoreUrl(DERIVATIVE + "/contents/" + name);
+        f.setModified(OffsetDateTime.parse("2024-04-30T12:00:00.123456789+02:00"));
+        f.setValid(valid);
+        return f;
+    }
+}
@@ -0,0 +1,142 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class UploadExecutorTest {
+
+    @Test
+    public void testConcurrentUploadsAreLimited() throws Exception {
+        for (boolean virtualThreads : new boolean[] { false, true }) {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            AtomicInteger finished = new AtomicInteger();
+            try (UploadExecutor executor = new UploadExecutor(2, virtualThreads)) {
+                for (int i = 0; i < 10; i++) {
+                    executor.submit(() -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        sleep(20);
+                        running.decrementAndGet();
+                        finished.incrementAndGet();
+                    });
+                }
+                executor.awaitAll();
+            }
+            assertEquals(10, finished.get());
+            assertTrue("max running " + maxRunning.get(), maxRunning.get() <= 2);
+        }
+    }
+
+    @Test
+    public void testFirstErrorIsReported() throws Exception {
+        IOException first = new IOException("first");
+        AtomicInteger finished = new AtomicInteger();
+        try (UploadExecutor executor = new UploadExecutor(2, false)) {
+            executor.submit(() -> {
+                throw first;
+            });
+            executor.submit(() -> {
+                throw new IOException("second");
+            });
+            for (int i = 0; i < 5; i++) {
+                executor.submit(finished::incrementAndGet);
+            }
+            try {
+                executor.awaitAll();
+                fail("error of the upload was not reported");
+            } catch (IOException e) {
+                assertSame(first, e);
+            }
+            // the other uploads were not stopped by the errors
+            assertEquals(5, finished.get());
+
+            // the errors are reported only once
+            executor.submit(finished::incrementAndGet);
+            executor.awaitAll();
+            assertEquals(6, finished.get());
+        }
+    }
+
+    @Test
+    public void testUncheckedErrorIsWrapped() throws Exception {
+        IllegalStateException failure = new IllegalStateException("broken");
+        try (UploadExecutor executor = new UploadExecutor(1, true)) {
+            executor.submit(() -> {
+                throw failure;
+            });
+            executor.awaitAll();
+            fail("error of the upload was not reported");
+        } catch (IOException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void testInterruptCancelsUploads() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        AtomicReference<Exception> result = new AtomicReference<>();
+        try (UploadExecutor executor = new UploadExecutor(1, false)) {
+            executor.submit(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    cancelled.countDown();
+                    throw new InterruptedIOException();
+                }
+            });
+            Thread waiting = new Thread(() -> {
+                try {
+                    executor.awaitAll();
+                } catch (IOException e) {
+                    result.set(e);
+                }
+            });
+            waiting.start();
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            waiting.interrupt();
+            waiting.join();
+            assertTrue(result.get() instanceof InterruptedIOException);
+            // the running upload is interrupted as well
+            assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testCloseStopsRunningUploads() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        UploadExecutor executor = new UploadExecutor(1, true);
+        executor.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.close();
+        assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class XsltTemplatesCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUnchangedStylesheetIsReused() throws Exception {
+        Path xslt = writeStylesheet("cached.xsl", stylesheet("first"), 0);
+        String url = xslt.toUri().toString();
+
+        Templates templates = XsltTemplatesCache.getTemplates(url, 0);
+        assertSame(templates, XsltTemplatesCache.getTemplates(url, 0));
+        assertEquals("first", transform(templates));
+
+        // within the time to live the file is not checked at all
+        writeStylesheet("cached.xsl", stylesheet("second"), 10000);
+        assertSame(templates, XsltTemplatesCache.getTemplates(url, 60000));
+    }
+
+    @Test
+    public void testChangedStylesheetIsCompiled() throws Exception {
+        Path xslt = writeStylesheet("changed.xsl", stylesheet("first"), 0);
+        String url = xslt.toUri().toString();
+        assertEquals("first", transform(XsltTemplatesCache.getTemplates(url, 0)));
+
+        writeStylesheet("changed.xsl", stylesheet("second"), 10000);
+        assertEquals("second", transform(XsltTemplatesCache.getTemplates(url, 0)));
+    }
+
+    @Test
+    public void testBrokenChangeKeepsPreviousVersion() throws Exception {
+        Path xslt = writeStylesheet("broken.xsl", stylesheet("first"), 0);
+        String url = xslt.toUri().toString();
+        Templates templates = XsltTemplatesCache.getTemplates(url, 0);
+
+        writeStylesheet("broken.xsl", "<xsl:stylesheet version=\"1.0\" xmlns:xsl=", 10000);
+        assertSame(templates, XsltTemplatesCache.getTemplates(url, 0));
+
+        // the repaired stylesheet is compiled again
+        writeStylesheet("broken.xsl", stylesheet("repaired"), 20000);
+        assertEquals("repaired", transform(XsltTemplatesCache.getTemplates(url, 0)));
+    }
+
+    @Test
+    public void testBrokenStylesheetWithoutPreviousVersionFails() throws Exception {
+        Path xslt = writeStylesheet("invalid.xsl", "<xsl:stylesheet version=\"1.0\" xmlns:xsl=", 0);
+        try {
+            XsltTemplatesCache.getTemplates(xslt.toUri().toString(), 0);
+            fail("broken stylesheet was compiled");
+        } catch (TransformerException e) {
+            // expected
+        }
+    }
+
+    private static String stylesheet(String text) {
+        return "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                + "<xsl:output method=\"text\"/><xsl:template match=\"/\">" + text + "</xsl:template>"
+                + "</xsl:stylesheet>";
+    }
+
+    private Path writeStylesheet(String name, String content, long offset) throws Exception {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        // the modification date has to change even if the file system has a coarse resolution
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + offset));
+        return file;
+    }
+
+    private static String transform(Templates templates) throws TransformerException {
+        StringWriter out = new StringWriter();
+        templates.newTransformer().transform(new StreamSource(new StringReader("<mets/>")), new StreamResult(out));
+        return out.toString();
+    }
+}
@@ -0,0 +1,217 @@
+package de.intranda.goobi.plugins.benchmark;
+
+import de.intranda.goobi.plugins.model.MycoreFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic data of a process for the benchmarks
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * create a file with random content
+     *
+     * @param file
+     * @param size
+     * @param seed
+     * @return
+     * @throws IOException
+     */
+    static Path createFile(Path file, long size, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += buffer.length) {
+                random.nextBytes(buffer);
+                out.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * delete a folder with all its content
+     *
+     * @param folder
+     * @throws IOException
+     */
+    static void delete(Path folder) throws IOException {
+        if (folder == null || !Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /**
+     * name of the n-th image of a process
+     *
+     * @param n
+     * @return
+     */
+    static String imageName(int n) {
+        return String.format("%08d.tif", n + 1);
+    }
+
+    /**
+     * files of a derivative listing with an image and an ALTO file per page
+     *
+     * @param pages
+     * @return
+     */
+    static List<MycoreFile> listing(int pages) {
+        List<MycoreFile> files = new ArrayList<>(pages);
+        for (int i = 0; i < pages; i++) {
+            MycoreFile f = new MycoreFile();
+            f.setName(imageName(i));
+            f.setMd5(md5(i));
+            f.setMimeType("image/tiff");
+            f.setSize(40_000_000L + i);
+            files.add(f);
+        }
+        return files;
+    }
+
+    /**
+     * attributes of a regular file as they are returned by a folder listing
+     *
+     * @param size
+     * @return
+     */
+    static BasicFileAttributes attributes(long size) {
+        FileTime time = FileTime.fromMillis(1_704_110_400_000L);
+        return new BasicFileAttributes() {
+            @Override
+            public FileTime lastModifiedTime() {
+                return time;
+            }
+
+            @Override
+            public FileTime lastAccessTime() {
+                return time;
+            }
+
+            @Override
+            public FileTime creationTime() {
+                return time;
+            }
+
+            @Override
+            public boolean isRegularFile() {
+                return true;
+            }
+
+            @Override
+            public boolean isDirectory() {
+                return false;
+            }
+
+            @Override
+            public boolean isSymbolicLink() {
+                return false;
+            }
+
+            @Override
+            public boolean isOther() {
+                return false;
+            }
+
+            @Override
+            public long size() {
+                return size;
+            }
+
+            @Override
+            public Object fileKey() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * a checksum that is unique for each page
+     *
+     * @param n
+     * @return
+     */
+    static String md5(int n) {
+        return String.format("%032x", n);
+    }
+
+    /**
+     * XML listing of a derivative in the format of MyCoRe, with the images in the root directory and the ALTO files
+     * in a nested directory
+     *
+     * @param pages
+     * @return
+     */
+    static byte[] listingXml(int pages) {
+        StringBuilder sb = new StringBuilder(pages * 400);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<directory name=\"/\" modified=\"2024-01-01T12:00:00.000Z\">\n");
+        for (int i = 0; i < pages; i++) {
+            appendFile(sb, imageName(i), "image/tiff", 40_000_000L + i, md5(i));
+        }
+        sb.append("<directory name=\"alto\" modified=\"2024-01-01T12:00:00.000Z\">\n");
+        for (int i = 0; i < pages; i++) {
+            appendFile(sb, String.format("%08d.xml", i + 1), "application/xml", 60_000L + i, md5(pages + i));
+        }
+        sb.append("</directory>\n</directory>\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendFile(StringBuilder sb, String name, String mimeType, long size, String md5) {
+        sb.append("<file name=\"").append(name).append("\" mimeType=\"").append(mimeType).append("\" size=\"")
+                .append(size).append("\" md5=\"").append(md5).append("\" modified=\"2024-01-01T12:00:00.000Z\"/>\n");
+    }
+
+    /**
+     * METS file of a volume with a logical and physical structure for the given number of pages
+     *
+     * @param pages
+     * @return
+     */
+    static byte[] metsXml(int pages) {
+        StringBuilder sb = new StringBuilder(pages * 600);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\" xmlns:mods=\"http://www.loc.gov/mods/v3\"");
+        sb.append(" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n");
+        sb.append("<mets:dmdSec ID=\"DMDLOG_0000\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods>\n");
+        sb.append("<mods:titleInfo><mods:title>Benchmark volume</mods:title></mods:titleInfo>\n");
+        sb.append("<mods:originInfo eventType=\"publication\"><mods:dateIssued>1897</mods:dateIssued></mods:originInfo>\n");
+        sb.append("<mods:part><mods:detail type=\"volume\"><mods:number>42</mods:number></mods:detail></mods:part>\n");
+        sb.append("</mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>\n");
+        sb.append("<mets:fileSec><mets:fileGrp USE=\"PRESENTATION\">\n");
+        for (int i = 0; i < pages; i++) {
+            sb.append("<mets:file ID=\"FILE_").append(i).append("\" MIMETYPE=\"image/tiff\"><mets:FLocat LOCTYPE=\"URL\"");
+            sb.append(" xlink:href=\"file:///opt/digiverso/goobi/metadata/1/images/benchmark_media/");
+            sb.append(imageName(i)).append("\"/></mets:file>\n");
+        }
+        sb.append("</mets:fileGrp></mets:fileSec>\n");
+        sb.append("<mets:structMap TYPE=\"PHYSICAL\"><mets:div ID=\"PHYS_0000\" TYPE=\"physSequence\">\n");
+        for (int i = 0; i < pages; i++) {
+            sb.append("<mets:div ID=\"PHYS_").append(i + 1).append("\" ORDER=\"").append(i + 1);
+            sb.append("\" TYPE=\"page\"><mets:fptr FILEID=\"FILE_").append(i).append("\"/></mets:div>\n");
+        }
+        sb.append("</mets:div></mets:structMap>\n</mets:mets>\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
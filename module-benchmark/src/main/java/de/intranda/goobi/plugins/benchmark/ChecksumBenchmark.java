@@ -0,0 +1,70 @@
+package de.intranda.goobi.plugins.benchmark;
+
+import de.intranda.goobi.plugins.ChecksumService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MD5 checksums of single files and of a batch of files, for the sizes of ALTO files, derivatives and TIFF masters.
+ * The files are read from the page cache after the first iteration, so the results show the cost of the hashing and
+ * not of the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    private static final int BATCH_SIZE = 8;
+
+    // ALTO file, JPEG derivative and uncompressed TIFF master
+    @Param({ "65536", "2097152", "52428800" })
+    private int size;
+
+    private Path folder;
+    private List<Path> files;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("checksum-benchmark");
+        files = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            files.add(BenchmarkData.createFile(folder.resolve(String.format("%08d.tif", i)), size, i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkData.delete(folder);
+    }
+
+    @Benchmark
+    public String singleFile() throws IOException {
+        return ChecksumService.md5Hex(files.get(0));
+    }
+
+    @Benchmark
+    public Map<Path, String> batch() throws IOException {
+        return ChecksumService.getInstance().md5Hex(files);
+    }
+}
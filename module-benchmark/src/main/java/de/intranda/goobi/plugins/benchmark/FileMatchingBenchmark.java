@@ -0,0 +1,135 @@
+package de.intranda.goobi.plugins.benchmark;
+
+import de.intranda.goobi.plugins.DeltaIngest;
+import de.intranda.goobi.plugins.DerivativeListing;
+import de.intranda.goobi.plugins.IngestFileRegistry;
+import de.intranda.goobi.plugins.model.IngestFile;
+import de.intranda.goobi.plugins.model.MycoreFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of the files of a process: the files of a folder are registered like in the first upload round and
+ * compared with the previous ingest, a second round finds them again by their path and the listing of MyCoRe is
+ * assigned to them by name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileMatchingBenchmark {
+
+    private static final String LOCATION = "https://mycore.example.org/api/v2/objects/jportal_jpvolume_00000001/"
+            + "derivates/jportal_derivate_00000001/contents/";
+    // default of max-tries
+    private static final int MAX_TRIES = 3;
+
+    @Param({ "1000", "5000", "20000" })
+    private int files;
+
+    private Map<Path, BasicFileAttributes> folder;
+    private Map<Path, String> checksums;
+    private List<MycoreFile> listing;
+    private IngestFileRegistry registered;
+    private IngestFileRegistry previous;
+
+    @Setup
+    public void setup() {
+        Path dir = Paths.get("/opt/digiverso/goobi/metadata/1/images/benchmark_media");
+        folder = new LinkedHashMap<>();
+        checksums = new HashMap<>();
+        for (int i = 0; i < files; i++) {
+            Path p = dir.resolve(BenchmarkData.imageName(i));
+            folder.put(p, BenchmarkData.attributes(40_000_000L + i));
+            checksums.put(p, BenchmarkData.md5(i));
+        }
+        // MyCoRe does not list the files in the order of the upload
+        listing = BenchmarkData.listing(files);
+        Collections.shuffle(listing, new Random(42));
+
+        registered = new IngestFileRegistry();
+        Map<Path, IngestFile> created = new LinkedHashMap<>();
+        registered.register(folder, "media", created, MAX_TRIES);
+        previous = new IngestFileRegistry();
+        for (Map.Entry<Path, IngestFile> e : created.entrySet()) {
+            IngestFile f = e.getValue();
+            f.setGoobiChecksum(checksums.get(e.getKey()));
+            IngestFile old = new IngestFile();
+            old.setName(f.getName());
+            old.setGoobiFilePath(f.getGoobiFilePath());
+            old.setGoobiSize(f.getGoobiSize());
+            old.setGoobiChecksum(f.getGoobiChecksum());
+            old.setValid(true);
+            previous.add(old);
+        }
+    }
+
+    /**
+     * first round of a delta ingest, all files are unknown and taken over from the previous ingest
+     *
+     * @return
+     */
+    @Benchmark
+    public Map<Path, IngestFile> firstRound() {
+        IngestFileRegistry list = new IngestFileRegistry();
+        Map<Path, IngestFile> created = new LinkedHashMap<>();
+        Map<Path, IngestFile> pending = list.register(folder, "media", created, MAX_TRIES);
+        for (Map.Entry<Path, IngestFile> e : created.entrySet()) {
+            e.getValue().setGoobiChecksum(checksums.get(e.getKey()));
+        }
+        DeltaIngest.takeOverUnchanged(created, pending, previous);
+        return pending;
+    }
+
+    /**
+     * later round of an ingest, all files are known already
+     *
+     * @return
+     */
+    @Benchmark
+    public int laterRound() {
+        return registered.register(folder, "media", new LinkedHashMap<>(), MAX_TRIES).size();
+    }
+
+    /**
+     * assign the listing of MyCoRe to the registered files
+     *
+     * @return
+     */
+    @Benchmark
+    public int verification() {
+        int valid = 0;
+        for (MycoreFile mf : listing) {
+            IngestFile f = registered.getByName(mf.getName());
+            if (f != null) {
+                DerivativeListing.update(f, mf, LOCATION);
+                if (f.isValid()) {
+                    valid++;
+                }
+            }
+        }
+        return valid;
+    }
+}
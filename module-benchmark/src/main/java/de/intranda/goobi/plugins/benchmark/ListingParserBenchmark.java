@@ -0,0 +1,61 @@
+package de.intranda.goobi.plugins.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import de.intranda.goobi.plugins.MycoreListingParser;
+import de.intranda.goobi.plugins.model.MycoreDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of large derivative listings of MyCoRe, mapped to MycoreDirectory with Jackson and streamed with
+ * MycoreListingParser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+public class ListingParserBenchmark {
+
+    private static final ObjectMapper MAPPER = new XmlMapper().registerModule(new JavaTimeModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    // pages of a volume, the listing contains an image and an ALTO file per page
+    @Param({ "1000", "5000", "20000" })
+    private int pages;
+
+    private byte[] xml;
+
+    @Setup
+    public void setup() {
+        xml = BenchmarkData.listingXml(pages);
+    }
+
+    @Benchmark
+    public MycoreDirectory jackson() throws IOException {
+        return MAPPER.readValue(xml, MycoreDirectory.class);
+    }
+
+    @Benchmark
+    public void streaming(Blackhole bh) throws IOException {
+        MycoreListingParser.parse(new ByteArrayInputStream(xml), "/contents/", (path, file) -> bh.consume(file));
+    }
+}
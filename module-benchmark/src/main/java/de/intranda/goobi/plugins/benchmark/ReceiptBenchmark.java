@@ -0,0 +1,109 @@
+package de.intranda.goobi.plugins.benchmark;
+
+import de.intranda.goobi.plugins.ReceiptWriter;
+import de.intranda.goobi.plugins.model.IngestFile;
+import de.intranda.goobi.plugins.model.IngestReceipt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing the receipt of an ingest with all its files, in one step and in several rounds like during an ingest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReceiptBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    @Param({ "1000", "5000", "20000" })
+    private int files;
+
+    private Path folder;
+    private List<IngestFile> ingestFiles;
+    private LocalDateTime beginn;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("receipt-benchmark");
+        beginn = LocalDateTime.now();
+        ingestFiles = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            IngestFile f = new IngestFile();
+            f.setName(BenchmarkData.imageName(i));
+            f.setGoobiFilePath("/opt/digiverso/goobi/metadata/1/images/benchmark_media/" + f.getName());
+            f.setGoobiFileType("media");
+            f.setGoobiChecksum(BenchmarkData.md5(i));
+            f.setGoobiSize(40_000_000L + i);
+            f.setMycoreChecksum(f.getGoobiChecksum());
+            f.setMycoreSize(f.getGoobiSize());
+            f.setMycoreMimeType("image/tiff");
+            f.setMycoreUrl("https://mycore.example.org/api/v2/objects/jportal_jpvolume_00000001/derivates/"
+                    + "jportal_derivate_00000001/contents/" + f.getName());
+            f.setValid(true);
+            f.setUploadCounter(1);
+            ingestFiles.add(f);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkData.delete(folder);
+    }
+
+    @Benchmark
+    public Path singleRound() {
+        ReceiptWriter writer = createWriter();
+        writer.start();
+        writer.append(ingestFiles);
+        writer.finish("success", null);
+        return writer.getFile();
+    }
+
+    /**
+     * the files are appended after each round, each round adds a part of the files
+     *
+     * @return
+     */
+    @Benchmark
+    public Path incremental() {
+        ReceiptWriter writer = createWriter();
+        writer.start();
+        for (int round = 1; round <= ROUNDS; round++) {
+            writer.append(ingestFiles.subList(0, files * round / ROUNDS));
+        }
+        writer.finish("success", null);
+        return writer.getFile();
+    }
+
+    private ReceiptWriter createWriter() {
+        IngestReceipt receipt = new IngestReceipt();
+        // each invocation writes its own file, the name is taken from the begin of the ingest
+        beginn = beginn.plusNanos(1_000_000);
+        receipt.setBeginn(beginn);
+        receipt.setVolume("jportal_jpvolume_00000001");
+        receipt.setDerivative("jportal_derivate_00000001");
+        return new ReceiptWriter(folder, receipt);
+    }
+}
@@ -0,0 +1,71 @@
+package de.intranda.goobi.plugins.benchmark;
+
+import de.intranda.goobi.plugins.XsltTemplatesCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transformation of the METS file into a MyCoRe object with the stylesheet from the documentation, once with the
+ * cached stylesheet like in the plugin and once compiling the stylesheet for each transformation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class XsltBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    private int pages;
+
+    private String xslt;
+    private byte[] mets;
+
+    @Setup
+    public void setup() {
+        URL url = XsltBenchmark.class.getResource("/goobimets.xsl");
+        if (url == null) {
+            throw new IllegalStateException("goobimets.xsl is missing in the benchmark jar");
+        }
+        xslt = url.toString();
+        mets = BenchmarkData.metsXml(pages);
+    }
+
+    @Benchmark
+    public String cachedTemplates() throws IOException, TransformerException {
+        return transform(XsltTemplatesCache.getTemplates(xslt, Long.MAX_VALUE).newTransformer());
+    }
+
+    @Benchmark
+    public String compiledEachTime() throws TransformerException {
+        return transform(TransformerFactory.newInstance().newTransformer(new StreamSource(xslt)));
+    }
+
+    private String transform(Transformer transformer) throws TransformerException {
+        transformer.setParameter("parentID", "jportal_jpvolume_00000000");
+        StringWriter out = new StringWriter();
+        transformer.transform(new StreamSource(new ByteArrayInputStream(mets)), new StreamResult(out));
+        return out.toString();
+    }
+}